@@ -0,0 +1,278 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.compiler.util.scan.InclusionScanException;
+import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
+import org.codehaus.plexus.compiler.util.scan.StaleSourceScanner;
+import org.codehaus.plexus.compiler.util.scan.mapping.SuffixMapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the analyzer on the compile source roots of the project, resolving types against its compile classpath,
+ * and writes the files that had loops rewritten to {@link #outputDirectory}. The sources themselves are left
+ * alone, so the build compiles what's in the repository, and the rewrites are there to review and copy over.
+ *
+ * It's meant to be cheap enough for every build: only the sources that changed since they were last analyzed
+ * are analyzed again, the same way the compiler plugin finds stale sources, and on several threads. A stamp file
+ * per source records when it was analyzed. When anything else that decides the output changes (the analyzer,
+ * its configuration, the dependencies, the profile), every source is analyzed again.
+ */
+@Mojo(name = "analyze", defaultPhase = LifecyclePhase.PROCESS_SOURCES,
+        requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+public class AnalyzeMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    /** Where rewritten sources go, in the same layout as the source roots. */
+    @Parameter(property = "arraylist-analysis.outputDirectory",
+            defaultValue = "${project.build.directory}/arraylist-analysis")
+    private File outputDirectory;
+
+    /** Where the stamps of analyzed sources and the classpath and declaration indexes are kept between builds. */
+    @Parameter(defaultValue = "${project.build.directory}/arraylist-analysis-state")
+    private File stateDirectory;
+
+    /** How many threads analyze files. 0 means one per core. */
+    @Parameter(property = "arraylist-analysis.threads", defaultValue = "0")
+    private int threads;
+
+    /** See --lexical-preserving. On by default, so the output can be diffed against the sources. */
+    @Parameter(property = "arraylist-analysis.lexicalPreserving", defaultValue = "true")
+    private boolean lexicalPreserving;
+
+    /** See --hoist-size. */
+    @Parameter(property = "arraylist-analysis.hoistSize", defaultValue = "false")
+    private boolean hoistSize;
+
+    /** See --primitive-lists. */
+    @Parameter(property = "arraylist-analysis.primitiveLists", defaultValue = "false")
+    private boolean primitiveLists;
+
+    /** See --presize. */
+    @Parameter(property = "arraylist-analysis.presize", defaultValue = "false")
+    private boolean presize;
+
+    /** See --replace-linked-lists. */
+    @Parameter(property = "arraylist-analysis.replaceLinkedLists", defaultValue = "false")
+    private boolean replaceLinkedLists;
+
+    /**
+     * See --declaration-index: the sources resolve against stubs of each other's declarations instead of parsing
+     * each other whole, and a changed signature analyzes every source again.
+     */
+    @Parameter(property = "arraylist-analysis.declarationIndex", defaultValue = "false")
+    private boolean declarationIndex;
+
+    /** See --file-timeout. 0 means no limit. */
+    @Parameter(property = "arraylist-analysis.fileTimeout", defaultValue = "0")
+    private long fileTimeout;
+
+    /** See --max-nodes. 0 means no limit. */
+    @Parameter(property = "arraylist-analysis.maxNodes", defaultValue = "0")
+    private int maxNodes;
+
+    /** See --profile. */
+    @Parameter(property = "arraylist-analysis.profile")
+    private File profile;
+
+    /** See --hot-samples. */
+    @Parameter(property = "arraylist-analysis.hotSamples", defaultValue = "1")
+    private long hotSamples;
+
+    /** How much newer than its stamp a source has to be to count as changed, like the compiler's staleMillis. */
+    @Parameter(property = "arraylist-analysis.staleMillis", defaultValue = "0")
+    private int staleMillis;
+
+    @Parameter(property = "arraylist-analysis.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping the ArrayList analysis");
+            return;
+        }
+        try {
+            SourceRootAnalyzer.runWithLargeStack("arraylist-analysis", this::analyze);
+        } catch (IOException | DependencyResolutionFailure e) {
+            throw new MojoExecutionException("ArrayList analysis failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void analyze() throws IOException {
+        Path build = new File(project.getBuild().getDirectory()).toPath();
+        // generated sources are rewritten on every build anyway
+        List<Path> roots = project.getCompileSourceRoots().stream()
+                .map(root -> new File(root).toPath())
+                .filter(Files::isDirectory)
+                .filter(root -> !root.startsWith(build))
+                .collect(Collectors.toList());
+        if (roots.isEmpty()) {
+            return;
+        }
+
+        // the sources resolve against each other as well as against the dependencies
+        List<Path> dependencies = dependencies();
+        List<Path> classpath = new ArrayList<>(roots);
+        classpath.addAll(dependencies);
+        Path state = stateDirectory.toPath();
+        ClasspathIndex index = ClasspathIndex.open(state.resolve("classpath.idx"), classpath);
+        DeclarationIndex declarations =
+                declarationIndex ? DeclarationIndex.open(state.resolve("declarations.idx"), roots) : null;
+        ExecutionProfile executionProfile = profile == null ? null : ExecutionProfile.read(profile.toPath());
+
+        Path stamps = state.resolve("stamps");
+        String fingerprint = fingerprint(dependencies, declarations, executionProfile);
+        Path fingerprintFile = state.resolve("fingerprint");
+        if (!Files.exists(fingerprintFile) ||
+                !new String(Files.readAllBytes(fingerprintFile), StandardCharsets.UTF_8).equals(fingerprint)) {
+            // what we'd write for unchanged sources changed too
+            getLog().info("The analyzer, its configuration or the classpath changed, analyzing every source");
+            delete(stamps);
+            delete(outputDirectory.toPath());
+            Files.createDirectories(state);
+            Files.write(fingerprintFile, fingerprint.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        for (Path root : roots) {
+            Path rootStamps = stamps.resolve(stampDirectoryName(root));
+            List<Path> stale = staleSources(root, rootStamps);
+            if (stale.isEmpty()) {
+                continue;
+            }
+            getLog().info("Analyzing " + stale.size() + " changed source(s) in " + root);
+
+            for (Path source : stale) {
+                // a source that used to be rewritten may not be anymore
+                Files.deleteIfExists(outputDirectory.toPath().resolve(root.relativize(source).toString()));
+            }
+
+            SourceRootAnalyzer analyzer = new SourceRootAnalyzer(root, outputDirectory.toPath(), threadCount)
+                    .setClasspath(index)
+                    .setDeclarations(declarations)
+                    .setLexicalPreserving(lexicalPreserving)
+                    .setHoistSize(hoistSize)
+                    .setPrimitiveLists(primitiveLists)
+                    .setPresize(presize)
+                    .setReplaceLinkedLists(replaceLinkedLists)
+                    .setBudget(fileTimeout, maxNodes)
+                    .setProfile(executionProfile, hotSamples);
+            int replaced = analyzer.analyzeFiles(stale.stream());
+            analyzer.report(replaced, getLog()::info);
+
+            // only once everything went through, so a failed build analyzes them again
+            FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+            for (Path source : stale) {
+                Path stamp = rootStamps.resolve(root.relativize(source) + ".analyzed");
+                Files.createDirectories(stamp.getParent());
+                if (!Files.exists(stamp)) {
+                    Files.createFile(stamp);
+                }
+                Files.setLastModifiedTime(stamp, now);
+            }
+        }
+    }
+
+    private List<Path> dependencies() {
+        try {
+            String output = project.getBuild().getOutputDirectory();
+            // our own classes are older versions of the sources
+            return project.getCompileClasspathElements().stream()
+                    .filter(element -> !element.equals(output))
+                    .map(element -> new File(element).toPath())
+                    .filter(Files::exists)
+                    .collect(Collectors.toList());
+        } catch (DependencyResolutionRequiredException e) {
+            throw new DependencyResolutionFailure(e);
+        }
+    }
+
+    private List<Path> staleSources(Path root, Path rootStamps) throws IOException {
+        SourceInclusionScanner scanner = new StaleSourceScanner(staleMillis,
+                Collections.singleton("**/*.java"), Collections.emptySet());
+        scanner.addSourceMapping(new SuffixMapping(".java", ".java.analyzed"));
+        try {
+            Set<File> stale = scanner.getIncludedSources(root.toFile(), rootStamps.toFile());
+            // sorted, so the log reads the same on every machine
+            return stale.stream().map(File::toPath).sorted().collect(Collectors.toList());
+        } catch (InclusionScanException e) {
+            throw new IOException("could not find the changed sources in " + root, e);
+        }
+    }
+
+    // src/main/java -> src_main_java
+    private String stampDirectoryName(Path root) {
+        Path base = project.getBasedir().toPath();
+        Path name = root.startsWith(base) ? base.relativize(root) : root.getRoot().relativize(root);
+        return name.toString().replace(File.separatorChar, '_');
+    }
+
+    // Source roots aren't in here: they're what the stamps are for, except for the signatures the other sources
+    // resolve against, with a declaration index. Jars are identified by size and modification time, and class
+    // directories (of other modules in the build) by the files in them, like in ClasspathIndex.
+    private String fingerprint(List<Path> dependencies, DeclarationIndex declarations,
+                               ExecutionProfile executionProfile) throws IOException {
+        StringBuilder sb = new StringBuilder(ArrayListAnalyzer.cacheFingerprint())
+                .append(";lexicalPreserving=").append(lexicalPreserving)
+                .append(";hoistSize=").append(hoistSize)
+                .append(";primitiveLists=").append(primitiveLists)
+                .append(";presize=").append(presize)
+                .append(";replaceLinkedLists=").append(replaceLinkedLists)
+                .append(";fileTimeout=").append(fileTimeout)
+                .append(";maxNodes=").append(maxNodes)
+                .append(";declarations=").append(declarations == null ? "" : declarations.getFingerprint())
+                .append(";profile=").append(executionProfile == null ? "" :
+                        executionProfile.getFingerprint() + ";hotSamples=" + hotSamples)
+                .append(";output=").append(outputDirectory.getAbsolutePath());
+        for (Path dependency : dependencies) {
+            sb.append(";classpath=").append(dependency);
+            if (Files.isRegularFile(dependency)) {
+                sb.append(' ').append(Files.size(dependency))
+                        .append(' ').append(Files.getLastModifiedTime(dependency).toMillis());
+            } else if (Files.isDirectory(dependency)) {
+                sb.append(' ').append(ClasspathIndex.directoryFingerprint(dependency));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // gets DependencyResolutionRequiredException out of a lambda that may only throw IOException
+    private static class DependencyResolutionFailure extends RuntimeException {
+        DependencyResolutionFailure(DependencyResolutionRequiredException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps an analyzer running, so the JVM, the JIT, the symbol solvers and the caches are warm when a request
+ * comes in. Editors and pre-commit hooks that analyze one file at a time otherwise pay for all of that on
+ * every file.
+ *
+ * Requests come either on stdin (answers go to stdout), or over connections to a port on the loopback
+ * interface. Every request and response is a line followed by a body of as many bytes as the line says:
+ * <pre>
+ *     rewrite LENGTH NAME      the body is a Java file; the answer is the rewritten file
+ *     check LENGTH NAME        the body is a Java file; the answer lists the places that would be rewritten,
+ *                              one "line:column" per line
+ *     stats 0                  the answer is the cache and timing statistics
+ *     quit 0                   closes the connection (on stdin, stops the daemon)
+ *
+ *     ok REPLACED LENGTH       followed by the answer. A rewrite that didn't replace anything answers with an
+ *                              empty body instead of a copy of the file.
+ *     error MESSAGE            the request failed, the connection can still be used. A file that takes longer
+ *                              or is larger than the analyzer's budget answers "error over budget".
+ * </pre>
+ * NAME is optional, and is only used in log messages. Bodies are UTF-8, and at most {@value #MAX_LENGTH} bytes;
+ * request lines at most {@value #MAX_HEADER}. A bad LENGTH or a longer line answers an error and closes the
+ * connection, since there's no telling where the next request starts.
+ */
+public class AnalysisDaemon {
+
+    // far more than any source file, and little enough to allocate on a whim
+    static final int MAX_LENGTH = 64 * 1024 * 1024;
+    // a command, a number and a file name; without a limit, a stream without newlines would be read into memory
+    static final int MAX_HEADER = 8 * 1024;
+
+    private final SourceRootAnalyzer analyzer;
+
+    /**
+     * @param analyzer the configured analyzer to handle requests with. Only its parsers, caches and rewrite
+     *                 settings are used, files are never read from its root or written to its output.
+     */
+    public AnalysisDaemon(SourceRootAnalyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Serves requests from stdin until it's closed or a quit request comes in.
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        serveConnection(new BufferedInputStream(in), new BufferedOutputStream(out));
+    }
+
+    /**
+     * Serves connections to the given port on the loopback interface, each on its own thread, until the
+     * process is stopped.
+     *
+     * @param port the port, or 0 to pick a free one
+     * @param threads how many connections to serve at the same time
+     */
+    public void listen(int port, int threads) throws IOException {
+        ExecutorService executor =
+                Executors.newFixedThreadPool(threads, SourceRootAnalyzer.analysisThreads("connection"));
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            // whoever started us needs to know where to connect
+            System.out.println("Listening on " + server.getInetAddress().getHostAddress() + ":" +
+                    server.getLocalPort());
+            while (true) {
+                Socket socket = server.accept();
+                executor.execute(() -> {
+                    try (Socket connection = socket) {
+                        serveConnection(new BufferedInputStream(connection.getInputStream()),
+                                new BufferedOutputStream(connection.getOutputStream()));
+                    } catch (IOException e) {
+                        System.err.println("Connection failed: " + e);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void serveConnection(InputStream in, OutputStream out) throws IOException {
+        byte[] line;
+        while ((line = readLine(in)) != null) {
+            if (line.length > MAX_HEADER) {
+                respondError(out, "request line longer than " + MAX_HEADER + " bytes");
+                return;
+            }
+            String header = new String(line, StandardCharsets.UTF_8);
+            String[] fields = header.trim().split(" ", 3);
+            String command = fields[0];
+            int length;
+            try {
+                length = fields.length > 1 ? Integer.parseInt(fields[1]) : 0;
+            } catch (NumberFormatException e) {
+                // we can't know where the body ends, so there's no telling where the next request starts
+                respondError(out, "bad length in \"" + header + "\"");
+                return;
+            }
+            if (length < 0 || length > MAX_LENGTH) {
+                // same here, and the body is never read
+                respondError(out, "length out of range (0 to " + MAX_LENGTH + ") in \"" + header + "\"");
+                return;
+            }
+            String name = fields.length > 2 ? fields[2] : "<request>";
+            byte[] body = readBody(in, length);
+
+            try {
+                switch (command) {
+                    case "rewrite":
+                        rewrite(name, body, out);
+                        break;
+                    case "check":
+                        check(name, body, out);
+                        break;
+                    case "stats":
+                        String stats = analyzer.getTypes() + "\n" + analyzer.getMetrics() + "\n";
+                        respond(out, 0, stats.getBytes(StandardCharsets.UTF_8));
+                        break;
+                    case "quit":
+                        respond(out, 0, new byte[0]);
+                        return;
+                    default:
+                        respondError(out, "unknown command \"" + command + "\"");
+                }
+            } catch (RuntimeException | StackOverflowError e) {
+                // usually a symbol we can't resolve; the next request may be fine
+                respondError(out, e.toString());
+            }
+        }
+    }
+
+    // nothing is written before the budget runs out, so the answer is either the whole result or the error
+    private void withinBudget(String name, SourceRootAnalyzer.Task request, OutputStream out) throws IOException {
+        if (!analyzer.withinBudget(name, System.nanoTime(), request)) {
+            respondError(out, "over budget");
+        }
+    }
+
+    private void rewrite(String name, byte[] content, OutputStream out) throws IOException {
+        withinBudget(name, () -> rewriteWithinBudget(name, content, out), out);
+    }
+
+    private void rewriteWithinBudget(String name, byte[] content, OutputStream out) throws IOException {
+        Optional<CompilationUnit> cu = analyzer.parse(name, content);
+        if (!cu.isPresent()) {
+            respondError(out, "could not parse " + name);
+            return;
+        }
+
+        int replaced = analyzer.transform(cu.get());
+        if (replaced == 0) {
+            respond(out, 0, new byte[0]);
+            return;
+        }
+        respond(out, replaced, analyzer.print(cu.get(), content).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void check(String name, byte[] content, OutputStream out) throws IOException {
+        withinBudget(name, () -> checkWithinBudget(name, content, out), out);
+    }
+
+    private void checkWithinBudget(String name, byte[] content, OutputStream out) throws IOException {
+        Optional<CompilationUnit> cu = analyzer.parse(name, content);
+        if (!cu.isPresent()) {
+            respondError(out, "could not parse " + name);
+            return;
+        }
+
+        int replaced = analyzer.transform(cu.get());
+
+        // every rewrite remembers where the code it replaced was
+        Set<Range> ranges = new TreeSet<>((a, b) -> a.begin.compareTo(b.begin));
+        for (Node node : cu.get().findAll(Node.class, n -> n.containsData(ArrayListAnalyzer.REPLACED_RANGE))) {
+            ranges.add(node.getData(ArrayListAnalyzer.REPLACED_RANGE));
+        }
+        StringBuilder findings = new StringBuilder();
+        for (Range range : ranges) {
+            findings.append(range.begin.line).append(':').append(range.begin.column).append('\n');
+        }
+        respond(out, replaced, findings.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(OutputStream out, int replaced, byte[] body) throws IOException {
+        out.write(("ok " + replaced + " " + body.length + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(body);
+        out.flush();
+    }
+
+    private static void respondError(OutputStream out, String message) throws IOException {
+        out.write(("error " + message.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // a request line, or null at the end of the stream. Stops reading one byte past MAX_HEADER.
+    private static byte[] readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n' && line.size() <= MAX_HEADER) {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toByteArray();
+            }
+            line.write(b);
+        }
+        return line.toByteArray();
+    }
+
+    private static byte[] readBody(InputStream in, int length) throws IOException {
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                throw new EOFException("request ended after " + read + " of " + length + " bytes");
+            }
+            read += n;
+        }
+        return body;
+    }
+}
@@ -0,0 +1,460 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time goes, and why loops aren't rewritten. Collects, for a whole run and across threads:
+ * <ul>
+ *     <li>wall time and allocated bytes per phase. Phases nest (resolving happens during analysis), and each
+ *     one only counts its own time, so the phases add up to the total;</li>
+ *     <li>wall time and outcome per file, for the slowest {@value #MAX_FILE_TIMINGS} files, so a huge tree
+ *     doesn't fill the heap with timings;</li>
+ *     <li>how many loops were rewritten, by shape;</li>
+ *     <li>how often isLocalArrayList and callsModificationMethods rejected a loop, by reason, and how many loops
+ *     were rewritten although they call add, remove, ... (on other collections than the list);</li>
+ *     <li>the deepest nesting the analysis walked through;</li>
+ *     <li>with an {@link ExecutionProfile}, how hot every rewritten loop was, for the hottest
+ *     {@value #MAX_FILE_TIMINGS}.</li>
+ * </ul>
+ * The numbers can be written as a JSON report, and if the JVM has Flight Recorder, every phase, file and
+ * rejection is also a JFR event (see {@link JfrEvents}), so a recording of a production run shows them next
+ * to GC and JIT activity.
+ */
+public class AnalysisMetrics {
+
+    public enum Phase {
+        PARSE, RESOLVE, ANALYSIS, REWRITE, SAVE
+    }
+
+    /**
+     * The shapes of loops over a list that are rewritten into indexed loops.
+     */
+    public enum Shape {
+        /** for (String s : list) */
+        FOR_EACH_LOOP,
+        /** Iterator&lt;String&gt; it = list.iterator(); while (it.hasNext()) { String s = it.next(); ... } */
+        ITERATOR_LOOP,
+        /** list.forEach(s -&gt; ...) */
+        FOR_EACH_CALL,
+        /** list.stream().forEach(s -&gt; ...) */
+        STREAM_FOR_EACH
+    }
+
+    public enum Rejection {
+        /** The loop iterates over something other than a plain name, e.g. a method call. */
+        NOT_A_NAME,
+        /** The iterable isn't an ArrayList or List. */
+        NOT_A_LIST,
+        /** The list isn't a local initialized with "new ArrayList". */
+        NOT_DECLARED_LOCALLY,
+        /** The list initializes another variable, or is assigned to or from. */
+        ALIASED,
+        /** The list is passed to a method. */
+        PASSED_AS_ARGUMENT,
+        /** get(i) might not be constant time. */
+        NOT_RANDOM_ACCESS,
+        /** The loop body calls add, remove, ... on the list, or on something that may be the list. */
+        CALLS_BANNED_METHOD,
+        /** The loop could be rewritten, but the execution profile says its method is cold. */
+        COLD
+    }
+
+    // getThreadAllocatedBytes is a HotSpot extension
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+
+    private static final AnalysisMetrics DISABLED = new AnalysisMetrics(false);
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    static final int MAX_FILE_TIMINGS = 10_000;
+
+    private final boolean enabled;
+    private final boolean jfr = JfrEvents.isAvailable();
+
+    private final LongAdder[] phaseCounts = adders(Phase.values().length);
+    private final LongAdder[] phaseNanos = adders(Phase.values().length);
+    private final LongAdder[] phaseBytes = adders(Phase.values().length);
+    private final LongAdder[] rejections = adders(Rejection.values().length);
+    private final LongAdder[] shapes = adders(Shape.values().length);
+    // the fastest of the slowest files on top, so it's the one to drop
+    private final PriorityQueue<FileTiming> files = new PriorityQueue<>(Comparator.comparingLong(t -> t.nanos));
+    private final LongAdder fileCount = new LongAdder();
+    private final LongAdder otherReceivers = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    // the coldest of the hottest rewrites on top
+    private final PriorityQueue<ProfiledRewrite> rewrites =
+            new PriorityQueue<>(Comparator.comparingLong(r -> r.methodSamples));
+
+    public AnalysisMetrics() {
+        this(true);
+    }
+
+    private AnalysisMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * An instance that doesn't record anything, for callers that don't care.
+     */
+    public static AnalysisMetrics disabled() {
+        return DISABLED;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) bean;
+        }
+        return null;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS == null ? 0 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Starts timing a phase on the current thread. Use with try-with-resources.
+     */
+    public Span time(Phase phase) {
+        if (!enabled) {
+            return Span.NONE;
+        }
+        return new Span(this, phase);
+    }
+
+    public void reject(Rejection rejection, int line) {
+        if (!enabled) {
+            return;
+        }
+        rejections[rejection.ordinal()].increment();
+        if (jfr) {
+            JfrEvents.loopRejected(rejection.name(), line);
+        }
+    }
+
+    public void rewritten(Shape shape) {
+        if (enabled) {
+            shapes[shape.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Records a loop that calls add, remove, ... but only on other receivers than the list, so it's rewritten,
+     * where checking the names of the methods alone would have turned it down.
+     */
+    public void otherReceiversOnly() {
+        if (enabled) {
+            otherReceivers.increment();
+        }
+    }
+
+    /**
+     * Records how deeply nested the tree of a file was, the compilation unit being at depth 0.
+     */
+    public void nestingDepth(int depth) {
+        if (enabled) {
+            maxDepth.accumulate(depth);
+        }
+    }
+
+    /**
+     * Records the time it took to handle a file, from reading it to writing the result.
+     *
+     * @param outcome what happened to it: skipped, cached, unchanged, rewritten, failed or overBudget
+     */
+    public void fileAnalyzed(String file, long nanos, int replaced, String outcome) {
+        if (!enabled) {
+            return;
+        }
+        fileCount.increment();
+        synchronized (files) {
+            files.add(new FileTiming(file, nanos, replaced, outcome));
+            if (files.size() > MAX_FILE_TIMINGS) {
+                files.poll();
+            }
+        }
+        if (jfr) {
+            JfrEvents.fileAnalyzed(file, nanos, replaced, outcome);
+        }
+    }
+
+    /**
+     * Records how hot a rewritten loop is, according to the execution profile.
+     *
+     * @param method the method the loop is in, as the profile names it
+     * @param methodSamples the samples in the method
+     * @param loopSamples the samples on the lines of the loop
+     */
+    public void profiledRewrite(String method, int line, long methodSamples, long loopSamples) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (rewrites) {
+            rewrites.add(new ProfiledRewrite(method, line, methodSamples, loopSamples));
+            if (rewrites.size() > MAX_FILE_TIMINGS) {
+                rewrites.poll();
+            }
+        }
+    }
+
+    public long getCount(Phase phase) {
+        return phaseCounts[phase.ordinal()].sum();
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    public long getAllocatedBytes(Phase phase) {
+        return phaseBytes[phase.ordinal()].sum();
+    }
+
+    public long getRejections(Rejection rejection) {
+        return rejections[rejection.ordinal()].sum();
+    }
+
+    public long getRewritten(Shape shape) {
+        return shapes[shape.ordinal()].sum();
+    }
+
+    /** How many loops were rewritten because their calls to add, remove, ... were on other receivers. */
+    public long getOtherReceiverLoops() {
+        return otherReceivers.sum();
+    }
+
+    /** The deepest nesting seen in any file. */
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    /** How many files were recorded, including the ones whose timings weren't kept. */
+    public long getFileCount() {
+        return fileCount.sum();
+    }
+
+    public void writeJson(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"allocationsMeasured\": " + (ALLOCATIONS != null) + ",\n");
+
+            writer.write("  \"phases\": {\n");
+            List<String> phases = new ArrayList<>();
+            for (Phase phase : Phase.values()) {
+                phases.add("    " + quote(camelCase(phase.name())) + ": {\"count\": " + getCount(phase) +
+                        ", \"nanos\": " + getNanos(phase) + ", \"allocatedBytes\": " + getAllocatedBytes(phase) + "}");
+            }
+            writer.write(String.join(",\n", phases));
+            writer.write("\n  },\n");
+
+            writer.write("  \"rewrittenLoops\": {\n");
+            List<String> rewritten = new ArrayList<>();
+            for (Shape shape : Shape.values()) {
+                rewritten.add("    " + quote(camelCase(shape.name())) + ": " + getRewritten(shape));
+            }
+            writer.write(String.join(",\n", rewritten));
+            writer.write("\n  },\n");
+
+            writer.write("  \"rejections\": {\n");
+            List<String> reasons = new ArrayList<>();
+            for (Rejection rejection : Rejection.values()) {
+                reasons.add("    " + quote(camelCase(rejection.name())) + ": " + getRejections(rejection));
+            }
+            writer.write(String.join(",\n", reasons));
+            writer.write("\n  },\n");
+
+            writer.write("  \"otherReceiverLoops\": " + getOtherReceiverLoops() + ",\n");
+            writer.write("  \"maxDepth\": " + getMaxDepth() + ",\n");
+            writer.write("  \"fileCount\": " + getFileCount() + ",\n");
+            writer.write("  \"files\": [\n");
+            List<FileTiming> slowest;
+            synchronized (files) {
+                slowest = new ArrayList<>(files);
+            }
+            slowest.sort(Comparator.comparingLong((FileTiming t) -> t.nanos).reversed());
+            List<String> timings = new ArrayList<>();
+            for (FileTiming timing : slowest) {
+                timings.add("    {\"file\": " + quote(timing.file) + ", \"nanos\": " + timing.nanos +
+                        ", \"replaced\": " + timing.replaced + ", \"outcome\": " + quote(timing.outcome) + "}");
+            }
+            writer.write(String.join(",\n", timings));
+            writer.write("\n  ],\n");
+
+            writer.write("  \"profiledRewrites\": [\n");
+            List<ProfiledRewrite> hottest;
+            synchronized (rewrites) {
+                hottest = new ArrayList<>(rewrites);
+            }
+            hottest.sort(Comparator.comparingLong((ProfiledRewrite r) -> r.methodSamples).reversed());
+            List<String> profiled = new ArrayList<>();
+            for (ProfiledRewrite rewrite : hottest) {
+                profiled.add("    {\"method\": " + quote(rewrite.method) + ", \"line\": " + rewrite.line +
+                        ", \"methodSamples\": " + rewrite.methodSamples +
+                        ", \"loopSamples\": " + rewrite.loopSamples + "}");
+            }
+            writer.write(String.join(",\n", profiled));
+            writer.write("\n  ]\n");
+            writer.write("}\n");
+        }
+    }
+
+    // NOT_A_NAME -> notAName
+    private static String camelCase(String name) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : name.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Phases:");
+        for (Phase phase : Phase.values()) {
+            sb.append(String.format(Locale.ROOT, " %s %.1f ms", camelCase(phase.name()), getNanos(phase) / 1e6));
+        }
+        sb.append("; rewritten loops:");
+        for (Shape shape : Shape.values()) {
+            sb.append(' ').append(camelCase(shape.name())).append(' ').append(getRewritten(shape));
+        }
+        sb.append("; rejected loops:");
+        for (Rejection rejection : Rejection.values()) {
+            sb.append(' ').append(camelCase(rejection.name())).append(' ').append(getRejections(rejection));
+        }
+        sb.append("; loops calling add, remove, ... on other receivers only ").append(getOtherReceiverLoops());
+        sb.append("; max depth ").append(getMaxDepth());
+        return sb.toString();
+    }
+
+    /**
+     * One phase on one thread. Time spent in phases started while this one is open is subtracted from it.
+     */
+    public static class Span implements AutoCloseable {
+
+        private static final Span NONE = new Span();
+
+        private final AnalysisMetrics metrics;
+        private final Phase phase;
+        private final Span parent;
+        private final Object event;
+        private final long startNanos;
+        private final long startBytes;
+        private long childNanos;
+        private long childBytes;
+
+        private Span() {
+            this.metrics = null;
+            this.phase = null;
+            this.parent = null;
+            this.event = null;
+            this.startNanos = 0;
+            this.startBytes = 0;
+        }
+
+        private Span(AnalysisMetrics metrics, Phase phase) {
+            this.metrics = metrics;
+            this.phase = phase;
+            this.parent = CURRENT.get();
+            this.event = metrics.jfr ? JfrEvents.beginPhase(phase.name()) : null;
+            CURRENT.set(this);
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (metrics == null) {
+                return;
+            }
+            long nanos = System.nanoTime() - startNanos;
+            long bytes = allocatedBytes() - startBytes;
+
+            int i = phase.ordinal();
+            metrics.phaseCounts[i].increment();
+            metrics.phaseNanos[i].add(nanos - childNanos);
+            metrics.phaseBytes[i].add(bytes - childBytes);
+
+            if (parent != null) {
+                parent.childNanos += nanos;
+                parent.childBytes += bytes;
+            }
+            CURRENT.set(parent);
+
+            if (event != null) {
+                JfrEvents.commit(event);
+            }
+        }
+    }
+
+    private static class ProfiledRewrite {
+        final String method;
+        final int line;
+        final long methodSamples;
+        final long loopSamples;
+
+        ProfiledRewrite(String method, int line, long methodSamples, long loopSamples) {
+            this.method = method;
+            this.line = line;
+            this.methodSamples = methodSamples;
+            this.loopSamples = loopSamples;
+        }
+    }
+
+    private static class FileTiming {
+        final String file;
+        final long nanos;
+        final int replaced;
+        final String outcome;
+
+        FileTiming(String file, long nanos, int replaced, String outcome) {
+            this.file = file;
+            this.nanos = nanos;
+            this.replaced = replaced;
+            this.outcome = outcome;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The command line options of {@link ArrayListAnalyzer}. Options look like "--name" or "--name=value".
+ */
+public class AnalyzerOptions {
+
+    private Path root;
+    private Path output;
+    private boolean allFiles = false;
+    private int threads = 1;
+    private Path cache;
+    private boolean lexicalPreserving = false;
+    private boolean hoistSize = false;
+    private boolean primitiveLists = false;
+    private boolean presize = false;
+    private boolean replaceLinkedLists = false;
+    private long fileTimeoutMillis = 0;
+    private int maxNodes = 0;
+    private Path metrics;
+    private boolean daemon = false;
+    private int daemonPort = -1;
+    private List<Path> classpath = Collections.emptyList();
+    private Path classpathIndex;
+    private boolean declarations = false;
+    private Path declarationIndex;
+    private Path profile;
+    private long hotSamples = 1;
+    private int verifyInputs = 0;
+
+    public static AnalyzerOptions parse(String[] args) {
+        AnalyzerOptions options = new AnalyzerOptions();
+
+        for (String arg : args) {
+            String name = arg;
+            String value = null;
+            int eq = arg.indexOf('=');
+            if (eq >= 0) {
+                name = arg.substring(0, eq);
+                value = arg.substring(eq + 1);
+            }
+
+            switch (name) {
+                case "--root":
+                    options.root = Paths.get(required(name, value));
+                    break;
+                case "--output":
+                    options.output = Paths.get(required(name, value));
+                    break;
+                case "--all":
+                    options.allFiles = true;
+                    break;
+                case "--parallel":
+                    // --parallel on its own means "use every core"
+                    options.allFiles = true;
+                    options.threads = value == null ?
+                            Runtime.getRuntime().availableProcessors() : Integer.parseInt(value);
+                    break;
+                case "--cache":
+                    options.cache = Paths.get(required(name, value));
+                    break;
+                case "--lexical-preserving":
+                    options.lexicalPreserving = true;
+                    break;
+                case "--hoist-size":
+                    options.hoistSize = true;
+                    break;
+                case "--primitive-lists":
+                    options.primitiveLists = true;
+                    break;
+                case "--presize":
+                    options.presize = true;
+                    break;
+                case "--replace-linked-lists":
+                    options.replaceLinkedLists = true;
+                    break;
+                case "--file-timeout":
+                    options.fileTimeoutMillis = Long.parseLong(required(name, value));
+                    break;
+                case "--max-nodes":
+                    options.maxNodes = Integer.parseInt(required(name, value));
+                    break;
+                case "--metrics":
+                    options.metrics = Paths.get(required(name, value));
+                    break;
+                case "--daemon":
+                    // --daemon on its own means stdin and stdout
+                    options.daemon = true;
+                    options.daemonPort = value == null ? -1 : Integer.parseInt(value);
+                    break;
+                case "--classpath":
+                    options.classpath = ClasspathIndex.parseClasspath(required(name, value));
+                    break;
+                case "--classpath-index":
+                    options.classpathIndex = Paths.get(required(name, value));
+                    break;
+                case "--declaration-index":
+                    // --declaration-index on its own keeps it next to the classpath index
+                    options.declarations = true;
+                    options.declarationIndex = value == null ? null : Paths.get(value);
+                    break;
+                case "--profile":
+                    options.profile = Paths.get(required(name, value));
+                    break;
+                case "--hot-samples":
+                    options.hotSamples = Long.parseLong(required(name, value));
+                    break;
+                case "--verify":
+                    // --verify on its own calls every rewritten method with 100 sets of arguments
+                    options.verifyInputs = value == null ? 100 : Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+
+        if (options.threads < 1) {
+            throw new IllegalArgumentException("--parallel needs at least one thread");
+        }
+        if (options.fileTimeoutMillis < 0 || options.maxNodes < 0) {
+            throw new IllegalArgumentException("--file-timeout and --max-nodes can't be negative");
+        }
+        if (options.verifyInputs < 0) {
+            throw new IllegalArgumentException("--verify needs a number of inputs");
+        }
+
+        return options;
+    }
+
+    private static String required(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(name + " needs a value, e.g. " + name + "=...");
+        }
+        return value;
+    }
+
+    /** The directory to read sources from, or null for the bundled samples. */
+    public Path getRoot() {
+        return root;
+    }
+
+    /** The directory to write results to, or null for "output" in the Maven module. */
+    public Path getOutput() {
+        return output;
+    }
+
+    /** Whether to analyze every file under the root instead of just the sample file. */
+    public boolean isAllFiles() {
+        return allFiles;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** The directory of the result cache, or null to not cache results. */
+    public Path getCache() {
+        return cache;
+    }
+
+    /** Whether to keep the original formatting of rewritten files instead of pretty printing them. */
+    public boolean isLexicalPreserving() {
+        return lexicalPreserving;
+    }
+
+    /** Whether rewritten loops read the size of the list once instead of in every condition. */
+    public boolean isHoistSize() {
+        return hoistSize;
+    }
+
+    /** Whether local lists of Integer, Long or Double are replaced with primitive arrays where that's safe. */
+    public boolean isPrimitiveLists() {
+        return primitiveLists;
+    }
+
+    /** Whether new ArrayLists get an initial capacity where there's a bound on how many elements are added. */
+    public boolean isPresize() {
+        return presize;
+    }
+
+    /** Whether local LinkedLists are replaced with an ArrayList or ArrayDeque where that's as fast or faster. */
+    public boolean isReplaceLinkedLists() {
+        return replaceLinkedLists;
+    }
+
+    /** How many milliseconds a file may take before it's skipped, or 0 for no limit. */
+    public long getFileTimeoutMillis() {
+        return fileTimeoutMillis;
+    }
+
+    /** How many AST nodes a file may have before it's skipped, or 0 for no limit. */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /** The file to write the JSON metrics report to, or null for no report. */
+    public Path getMetrics() {
+        return metrics;
+    }
+
+    /** Whether to keep running and serve requests instead of analyzing files, see {@link AnalysisDaemon}. */
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    /** The loopback port the daemon listens on, 0 for any free one, or -1 to use stdin and stdout. */
+    public int getDaemonPort() {
+        return daemonPort;
+    }
+
+    /** Jars, class directories and source roots to resolve project types from, in lookup order. */
+    public List<Path> getClasspath() {
+        return classpath;
+    }
+
+    /** A Flight Recorder recording to find hot methods in, or null to rewrite loops in every method. */
+    public Path getProfile() {
+        return profile;
+    }
+
+    /** How many samples a method needs in the profile for its loops to be rewritten. */
+    public long getHotSamples() {
+        return hotSamples;
+    }
+
+    /**
+     * How many sets of arguments every rewritten method is called with to check it still behaves the same, see
+     * {@link RewriteVerifier}. 0 means the rewrites aren't verified.
+     */
+    public int getVerifyInputs() {
+        return verifyInputs;
+    }
+
+    /**
+     * The file to keep the index of the classpath in, see {@link ClasspathIndex}. Defaults to a file in the cache
+     * directory, or without a cache to one per classpath in the system's temporary directory.
+     */
+    public Path getClasspathIndex() {
+        if (classpathIndex != null) {
+            return classpathIndex;
+        }
+        return cache != null ? cache.resolve("classpath.idx") : temporaryIndex("classpath", classpath);
+    }
+
+    /**
+     * The file to keep the index of the declarations in the source root (and the source roots on the classpath)
+     * in, see {@link DeclarationIndex}, or null to not resolve types against the sources being analyzed. Defaults
+     * to a file in the cache directory, or without a cache to one per root and classpath in the system's
+     * temporary directory.
+     */
+    public Path getDeclarationIndex() {
+        if (!declarations || declarationIndex != null) {
+            return declarationIndex;
+        }
+        if (cache != null) {
+            return cache.resolve("declarations.idx");
+        }
+        List<Path> sourceRoots = new ArrayList<>();
+        if (root != null) {
+            sourceRoots.add(root);
+        }
+        sourceRoots.addAll(classpath);
+        return temporaryIndex("declarations", sourceRoots);
+    }
+
+    // the temporary directory is shared by every project, and they'd keep replacing each other's index. The index
+    // knows what it was built from, so two lists with the same hash only cost a rebuild.
+    private static Path temporaryIndex(String name, List<Path> elements) {
+        List<Path> absolute = elements.stream().map(Path::toAbsolutePath).collect(Collectors.toList());
+        return Paths.get(System.getProperty("java.io.tmpdir"),
+                "arraylist-analysis-" + name + "-" + Integer.toHexString(absolute.hashCode()) + ".idx");
+    }
+}
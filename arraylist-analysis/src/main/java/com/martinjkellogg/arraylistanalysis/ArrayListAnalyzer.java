@@ -0,0 +1,544 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
+import com.github.javaparser.resolution.types.ResolvedReferenceType;
+import com.github.javaparser.resolution.types.ResolvedType;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.javaparsermodel.declarations.JavaParserSymbolDeclaration;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.github.javaparser.utils.CodeGenerationUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Some code that uses JavaParser.
+ */
+public class ArrayListAnalyzer {
+
+    /**
+     * Bump this whenever a change to the analysis or the rewrite changes the output, so cached results from
+     * older versions aren't reused.
+     */
+    public static final int ANALYSIS_VERSION = 8;
+
+    /**
+     * Set on every node a rewrite puts in place of an original one: the range of the node it replaced in the
+     * original source.
+     */
+    static final DataKey<Range> REPLACED_RANGE = new DataKey<Range>() {
+    };
+
+    public static void main(String[] args) throws IOException {
+        // everything runs on a thread with a deep stack, see SourceRootAnalyzer.STACK_SIZE
+        SourceRootAnalyzer.runWithLargeStack("analyzer", () -> run(args));
+    }
+
+    private static void run(String[] args) throws IOException {
+
+        AnalyzerOptions options = AnalyzerOptions.parse(args);
+
+        // Files are read from a root directory, by default found by taking the root from the current
+        // Maven module, with src/main/resources appended.
+        Path root = options.getRoot() != null ? options.getRoot() :
+                CodeGenerationUtils.mavenModuleRoot(ArrayListAnalyzer.class).resolve("src/main/resources");
+        Path output = options.getOutput() != null ? options.getOutput() :
+                // The path of the Maven module/project which contains the class,
+                // appended with a path to "output"
+                CodeGenerationUtils.mavenModuleRoot(ArrayListAnalyzer.class).resolve(Paths.get("output"));
+
+        // project types resolve through an index of the classpath that's built once and reused by later runs
+        ClasspathIndex classpath = options.getClasspath().isEmpty() ? null :
+                ClasspathIndex.open(options.getClasspathIndex(), options.getClasspath());
+        // and the files being analyzed resolve against each other through an index of their declarations
+        DeclarationIndex declarations = null;
+        if (options.getDeclarationIndex() != null) {
+            List<Path> sourceRoots = new ArrayList<>();
+            sourceRoots.add(root);
+            sourceRoots.addAll(options.getClasspath());
+            declarations = DeclarationIndex.open(options.getDeclarationIndex(), sourceRoots);
+        }
+        // with a recording, only loops in hot methods are rewritten
+        ExecutionProfile profile = options.getProfile() == null ? null : ExecutionProfile.read(options.getProfile());
+
+        if (options.isDaemon()) {
+            // stay warm and wait for requests; this only returns once stdin is closed
+            AnalysisDaemon daemon = new AnalysisDaemon(
+                    newSourceRootAnalyzer(options, root, output, classpath, declarations, profile));
+            if (options.getDaemonPort() < 0) {
+                daemon.serve(System.in, System.out);
+            } else {
+                daemon.listen(options.getDaemonPort(), options.getThreads());
+            }
+            return;
+        }
+
+        if (options.isAllFiles()) {
+            // walk the whole source root, possibly on several threads
+            ResultCache cache = options.getCache() == null ? null :
+                    ResultCache.open(options.getCache(), cacheFingerprint() +
+                            ";lexicalPreserving=" + options.isLexicalPreserving() +
+                            ";hoistSize=" + options.isHoistSize() +
+                            ";primitiveLists=" + options.isPrimitiveLists() + ";presize=" + options.isPresize() +
+                            ";replaceLinkedLists=" + options.isReplaceLinkedLists() +
+                            ";classpath=" + (classpath == null ? "" : classpath.getFingerprint()) +
+                            ";declarations=" + (declarations == null ? "" : declarations.getFingerprint()) +
+                            ";profile=" + (profile == null ? "" :
+                                    profile.getFingerprint() + ";hotSamples=" + options.getHotSamples()));
+            SourceRootAnalyzer analyzer = newSourceRootAnalyzer(options, root, output, classpath, declarations, profile)
+                    .setCache(cache);
+            analyzer.analyzeAll();
+            if (options.getMetrics() != null) {
+                analyzer.getMetrics().writeJson(options.getMetrics());
+            }
+            verify(options, root, output);
+            return;
+        }
+
+        // Our sample is in the root of this directory, so no package name. It goes through the same code as
+        // every file of --all, so its tree is dropped as soon as it's written.
+        // Only save the file if something changed: printing a large file is expensive, and the output would
+        // just be a reformatted copy of the input.
+        SourceRootAnalyzer analyzer = newSourceRootAnalyzer(options, root, output, classpath, declarations, profile);
+        analyzer.analyzeFile(root.resolve("SimpleYesTransform.java"));
+
+        if (options.getMetrics() != null) {
+            analyzer.getMetrics().writeJson(options.getMetrics());
+        }
+        verify(options, root, output);
+    }
+
+    // every file in the output, including ones written by earlier runs that are still there
+    private static void verify(AnalyzerOptions options, Path root, Path output) throws IOException {
+        if (options.getVerifyInputs() == 0) {
+            return;
+        }
+        int different =
+                new RewriteVerifier(root, output, options.getClasspath(), options.getVerifyInputs()).verifyAll();
+        if (different > 0) {
+            throw new IllegalStateException(different + " rewritten method(s) don't behave like the originals");
+        }
+    }
+
+    private static SourceRootAnalyzer newSourceRootAnalyzer(AnalyzerOptions options, Path root, Path output,
+                                                            ClasspathIndex classpath, DeclarationIndex declarations,
+                                                            ExecutionProfile profile) {
+        return new SourceRootAnalyzer(root, output, options.getThreads())
+                .setClasspath(classpath)
+                .setDeclarations(declarations)
+                .setProfile(profile, options.getHotSamples())
+                .setLexicalPreserving(options.isLexicalPreserving())
+                .setHoistSize(options.isHoistSize())
+                .setPrimitiveLists(options.isPrimitiveLists())
+                .setPresize(options.isPresize())
+                .setReplaceLinkedLists(options.isReplaceLinkedLists())
+                .setBudget(options.getFileTimeoutMillis(), options.getMaxNodes());
+    }
+
+    /**
+     * Creates a parser configuration with its own symbol solver. The symbol solver caches aggressively and
+     * isn't meant to be shared between threads, so every thread that parses files should have its own.
+     */
+    public static ParserConfiguration newParserConfiguration() {
+        return newParserConfiguration(null);
+    }
+
+    /**
+     * Same as {@link #newParserConfiguration()}, but also resolves types from a classpath.
+     *
+     * @param classpath the index of the classpath, or null to only resolve JDK types
+     */
+    public static ParserConfiguration newParserConfiguration(ClasspathIndex classpath) {
+        return newParserConfiguration(classpath, null);
+    }
+
+    /**
+     * Same as {@link #newParserConfiguration(ClasspathIndex)}, but also resolves the types declared in the
+     * sources being analyzed.
+     *
+     * @param declarations the index of the declarations in the source roots, or null to not resolve them
+     */
+    public static ParserConfiguration newParserConfiguration(ClasspathIndex classpath, DeclarationIndex declarations) {
+        // Set up a minimal type solver that only looks at the classes used to run this sample.
+        CombinedTypeSolver combinedTypeSolver = new CombinedTypeSolver();
+        // asked first for every type, so a file out of its budget stops in the middle of a long resolution
+        combinedTypeSolver.add(new FileBudget.Checkpoint());
+        combinedTypeSolver.add(new ReflectionTypeSolver());
+        if (declarations != null) {
+            // before the classpath, which would parse the whole file of a type from a source root
+            combinedTypeSolver.add(new IndexedDeclarationTypeSolver(declarations));
+        }
+        if (classpath != null) {
+            // the JDK comes first, so the index never has to materialize java.lang.Object and friends
+            combinedTypeSolver.add(new IndexedClasspathTypeSolver(classpath));
+        }
+
+        // Configure JavaParser to use type resolution
+        JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
+
+        return new ParserConfiguration().setSymbolResolver(symbolSolver);
+    }
+
+    /**
+     * Replaces every for-each loop in the compilation unit that can be proven safe with an indexed loop.
+     *
+     * @return the number of loops that were replaced
+     */
+    public static int transform(CompilationUnit cu) {
+        return transform(cu, new TypeResolutionCache());
+    }
+
+    /**
+     * Same as {@link #transform(CompilationUnit)}, but resolves types through the given cache, which can be
+     * shared between files.
+     */
+    public static int transform(CompilationUnit cu, TypeResolutionCache types) {
+        return transform(cu, types, false);
+    }
+
+    /**
+     * Same as {@link #transform(CompilationUnit, TypeResolutionCache)}.
+     *
+     * @param hoistSize read the size of the list once, before the first iteration, instead of in every condition
+     */
+    public static int transform(CompilationUnit cu, TypeResolutionCache types, boolean hoistSize) {
+        return transform(cu, types, hoistSize, AnalysisMetrics.disabled());
+    }
+
+    /**
+     * Same as {@link #transform(CompilationUnit, TypeResolutionCache, boolean)}.
+     *
+     * @param metrics where to count rejected loops and record the time spent rewriting
+     */
+    public static int transform(CompilationUnit cu, TypeResolutionCache types, boolean hoistSize,
+                                AnalysisMetrics metrics) {
+        return new RuleEngine(Collections.singletonList(new IndexedLoopRule(hoistSize))).transform(cu, types, metrics);
+    }
+
+    static boolean isLocalArrayList(Node node, BlockStmt n, Map<BlockStmt, DefUseIndex> indexes,
+                                    TypeResolutionCache types) {
+        return isLocalArrayList(node, n, indexes, types, AnalysisMetrics.disabled());
+    }
+
+    /**
+     * Same as {@link #isLocalArrayList(Node, BlockStmt, Map, TypeResolutionCache)}, but counts why the loop was
+     * rejected.
+     */
+    static boolean isLocalArrayList(Node node, BlockStmt n, Map<BlockStmt, DefUseIndex> indexes,
+                                    TypeResolutionCache types, AnalysisMetrics metrics) {
+        ForEachStmt forEachNode = (ForEachStmt) node;
+
+        Expression iterable = forEachNode.getIterable();
+
+        if (!iterable.isNameExpr()) {
+            return reject(metrics, AnalysisMetrics.Rejection.NOT_A_NAME, node);
+        }
+
+        return isLocalArrayList(iterable.asNameExpr(), node, n, indexes, types, metrics);
+    }
+
+    /**
+     * The same checks for any shape of loop over a list: a for-each loop, a loop over its iterator, or a call to
+     * forEach.
+     *
+     * @param iterableName the list
+     * @param node the loop, or the lambda that runs for every element
+     * @param n the block the loop is in
+     */
+    static boolean isLocalArrayList(NameExpr iterableName, Node node, BlockStmt n, Map<BlockStmt, DefUseIndex> indexes,
+                                    TypeResolutionCache types, AnalysisMetrics metrics) {
+        Expression iterable = iterableName;
+
+        ResolvedType resolvedType = types.calculateResolvedType(iterable);
+
+        if (!resolvedType.isReferenceType()) {
+            return reject(metrics, AnalysisMetrics.Rejection.NOT_A_LIST, node);
+        }
+
+        ResolvedReferenceType refType = resolvedType.asReferenceType();
+        if (!("java.util.ArrayList".equals(refType.getQualifiedName()) ||
+                "java.util.List".equals(refType.getQualifiedName()))) {
+            return reject(metrics, AnalysisMetrics.Rejection.NOT_A_LIST, node);
+        }
+
+
+        String name = iterableName.getNameAsString();
+        DefUseIndex index = DefUseIndex.of(n, indexes);
+
+        // if there were no declarations in the method body, then the foreach loop can't be over a local variable
+        if (!index.hasDeclarations(n)) {
+            return reject(metrics, AnalysisMetrics.Rejection.NOT_DECLARED_LOCALLY, node);
+        }
+
+        // if a variable is initialized with the value of the iterable, or the iterable is on either side of an
+        // assignment, reject the code because it's (possibly) being aliased. We're only looking for effectively
+        // final locals
+        if (index.isAliased(n, name)) {
+            return reject(metrics, AnalysisMetrics.Rejection.ALIASED, node);
+        }
+
+        // if it wasn't declared locally with the array list constructor, reject
+        if (!index.isDeclaredAsNewArrayList(n, name)) {
+            return reject(metrics, AnalysisMetrics.Rejection.NOT_DECLARED_LOCALLY, node);
+        }
+
+        // if a parameter to a method call is the list anywhere, reject because it might alias it, unless we can
+        // tell the method only reads it (or changes it, but not during the loop)
+        if (index.isPassedAsArgument(n, name) && !MethodSummaries.isOnlyReadBy(n, name, node, types)) {
+            return reject(metrics, AnalysisMetrics.Rejection.PASSED_AS_ARGUMENT, node);
+        }
+
+        // get(i) has to be constant time, or the indexed loop is quadratic
+        if (!isRandomAccess(iterableName, refType, types)) {
+            return reject(metrics, AnalysisMetrics.Rejection.NOT_RANDOM_ACCESS, node);
+        }
+
+        return true;
+    }
+
+    private static boolean reject(AnalysisMetrics metrics, AnalysisMetrics.Rejection rejection, Node node) {
+        metrics.reject(rejection, line(node));
+        return false;
+    }
+
+    private static int line(Node node) {
+        return node.getBegin().map(position -> position.line).orElse(-1);
+    }
+
+    /**
+     * Whether the list is known to support fast random access. A List-typed variable is checked through the
+     * constructor in its declaration, since the index above only looks at the name of the class.
+     */
+    static boolean isRandomAccess(NameExpr list, ResolvedReferenceType type, TypeResolutionCache types) {
+        if (types.isSubtypeOf(type, "java.util.RandomAccess")) {
+            return true;
+        }
+
+        ResolvedValueDeclaration declaration = types.resolveDeclaration(list);
+        if (!(declaration instanceof JavaParserSymbolDeclaration)) {
+            return false;
+        }
+        Node declarator = ((JavaParserSymbolDeclaration) declaration).getWrappedNode();
+        if (!(declarator instanceof VariableDeclarator)) {
+            return false;
+        }
+        Optional<Expression> initializer = ((VariableDeclarator) declarator).getInitializer();
+        if (!initializer.isPresent() || !initializer.get().isObjectCreationExpr()) {
+            return false;
+        }
+
+        ResolvedType created = types.calculateResolvedType(initializer.get());
+        return created.isReferenceType() && types.isSubtypeOf(created.asReferenceType(), "java.util.RandomAccess");
+    }
+
+    private static final String[] bannedMethods = {
+            "add", "addAll", "remove", "removeAll", "removeIf", "removeRange", "retainAll"};
+    private static final Set<String> bannedMethodsSet = new HashSet<String>();
+    static {
+        bannedMethodsSet.addAll(Arrays.asList(bannedMethods));
+    }
+
+    /**
+     * Describes everything besides the input file that decides what the analysis produces.
+     */
+    public static String cacheFingerprint() {
+        return "version=" + ANALYSIS_VERSION + ";banned=" + String.join(",", new TreeSet<>(bannedMethodsSet));
+    }
+
+    static boolean isBannedMethod(String name) {
+        return bannedMethodsSet.contains(name);
+    }
+
+    static boolean callsModificationMethods(Node stmt) {
+        for (MethodCallExpr methodCall : stmt.findAll(MethodCallExpr.class)) {
+            if (bannedMethodsSet.contains(methodCall.getName().toString())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // the declared types an ArrayList can be stored in
+    private static final Set<String> ARRAY_LIST_SUPERTYPES = new HashSet<>(Arrays.asList(
+            "java.util.ArrayList", "java.util.AbstractList", "java.util.AbstractCollection", "java.util.List",
+            "java.util.Collection", "java.lang.Iterable", "java.util.RandomAccess", "java.lang.Cloneable",
+            "java.io.Serializable", "java.lang.Object"));
+
+    // what else changes the list, when it handed one out: "it.remove()" or "listIterator.add(s)"
+    private static final Set<String> ITERATOR_TYPES = new HashSet<>(Arrays.asList(
+            "java.util.Iterator", "java.util.ListIterator"));
+
+    /**
+     * Same as {@link #callsModificationMethods(Node)}, but only counts the calls that may change the list the
+     * loop iterates over, so "for (String s : list) otherSet.add(s);" is fine. A call may change it if it's
+     * called on the list itself, or the list is used somewhere an alias could come from (see
+     * {@link DefUseIndex#hasOtherUses}, like a subList or an iterator of it) and the receiver is declared as
+     * something an ArrayList or one of its iterators fits in.
+     * Calls on this and on fields can't be on a local list that never got out.
+     *
+     * @param loop the loop, or the lambda that runs for every element
+     * @param name the list
+     * @param block the block the loop is in, which declares the list (isLocalArrayList made sure)
+     */
+    static boolean callsModificationMethods(Node loop, String name, BlockStmt block, DefUseIndex index,
+                                            TypeResolutionCache types) {
+        boolean mayBeAliased = index.hasOtherUses(block, name);
+        for (Expression call : index.bannedCalls(loop)) {
+            if (call.isMethodReferenceExpr()) {
+                if (DefUseIndex.referencedName(call.asMethodReferenceExpr()).filter(name::equals).isPresent() ||
+                        mayBeList(call.asMethodReferenceExpr().getScope(), name, mayBeAliased, types)) {
+                    return true;
+                }
+            } else if (call.asMethodCallExpr().getScope()
+                    .filter(r -> mayBeList(r, name, mayBeAliased, types)).isPresent()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean mayBeList(Expression receiver, String name, boolean mayBeAliased,
+                                     TypeResolutionCache types) {
+        if (receiver.isNameExpr() && receiver.asNameExpr().getNameAsString().equals(name)) {
+            return true;
+        }
+        if (!mayBeAliased || receiver.isThisExpr() || receiver.isSuperExpr()) {
+            return false;
+        }
+
+        ResolvedType type;
+        try {
+            type = types.calculateResolvedType(receiver);
+        } catch (RuntimeException e) {
+            // can't tell what it is, so it could be the list
+            return true;
+        }
+        if (type.isTypeVariable() || type.isWildcard()) {
+            return true;
+        }
+        if (!type.isReferenceType()) {
+            return false;
+        }
+        String qualifiedName = type.asReferenceType().getQualifiedName();
+        return ARRAY_LIST_SUPERTYPES.contains(qualifiedName) || ITERATOR_TYPES.contains(qualifiedName);
+    }
+
+    static void doReplace(BlockStmt n, Node node) {
+        doReplace(n, node, new LocalNames(), false);
+    }
+
+    /**
+     * Replaces the loop with an indexed one:
+     * <pre>
+     *     for (int i = 0; i &lt; list.size(); i += 1)                   without hoistSize
+     *     for (int i = 0, size = list.size(); i &lt; size; i++)         with hoistSize
+     * </pre>
+     * The loop never changes the list (callsModificationMethods made sure), so reading the size once is safe.
+     */
+    static void doReplace(BlockStmt n, Node node, LocalNames names, boolean hoistSize) {
+        ForEachStmt forEachStmt = (ForEachStmt) node;
+        String listName = forEachStmt.getIterable().asNameExpr().getNameAsString();
+
+        // "for (String s : list) total += s.length();" has a statement for a body, not a block
+        Statement body = forEachStmt.getBody().clone();
+        List<Statement> statements = body.isBlockStmt() ? body.asBlockStmt().getStatements() :
+                Collections.singletonList(body);
+
+        ForStmt noIteratorStmt = indexedLoop(node, listName, forEachStmt.getVariable().clone(), statements, names,
+                hoistSize);
+
+        noIteratorStmt.setComment(forEachStmt.getComment().isPresent() ? forEachStmt.getComment().get() : null);
+        forEachStmt.getRange().ifPresent(range -> noIteratorStmt.setData(REPLACED_RANGE, range));
+
+        n.replace(forEachStmt, noIteratorStmt);
+    }
+
+    /**
+     * The indexed loop doReplace puts in place of a for-each loop, for the other shapes of loops over a list as
+     * well: the element is read with get(i) at the top of the body, followed by the statements of the old one.
+     *
+     * @param node the loop to replace, which decides the scope of the new names
+     * @param element the declaration of the element variable, without an initializer
+     */
+    static ForStmt indexedLoop(Node node, String listName, VariableDeclarationExpr element, List<Statement> body,
+                               LocalNames names, boolean hoistSize) {
+
+        // names are picked so they don't clash with anything in the method, and the same file always gets the
+        // same ones, so the output can be diffed and cached
+        final String loopvarName = names.fresh(node, "i");
+
+        ForStmt noIteratorStmt = new ForStmt();
+
+        MethodCallExpr size = new MethodCallExpr(new NameExpr(listName), new SimpleName("size"));
+
+        VariableDeclarationExpr declarator = new VariableDeclarationExpr(
+                new VariableDeclarator(PrimitiveType.intType(), loopvarName, new IntegerLiteralExpr(0)));
+        Expression bound = size;
+        if (hoistSize) {
+            String sizeName = names.fresh(node, "size");
+            declarator.addVariable(new VariableDeclarator(PrimitiveType.intType(), sizeName, size));
+            bound = new NameExpr(sizeName);
+        }
+        NodeList<Expression> initalizer = new NodeList<>(declarator);
+        noIteratorStmt.setInitialization(initalizer);
+
+        BinaryExpr comparison = new BinaryExpr(new NameExpr(loopvarName), bound, BinaryExpr.Operator.LESS);
+
+        noIteratorStmt.setCompare(comparison);
+
+        Expression updateExpr = hoistSize ?
+                new UnaryExpr(new NameExpr(loopvarName), UnaryExpr.Operator.POSTFIX_INCREMENT) :
+                new AssignExpr(new NameExpr(loopvarName), new IntegerLiteralExpr(1), AssignExpr.Operator.PLUS);
+        NodeList<Expression> update = new NodeList<>(updateExpr);
+        noIteratorStmt.setUpdate(update);
+
+        NodeList<Expression> args = new NodeList<>(new NameExpr(loopvarName));
+        AssignExpr assignExpr1 = new AssignExpr(element,
+                new MethodCallExpr(new NameExpr(listName), new SimpleName("get"), args),
+                AssignExpr.Operator.ASSIGN);
+
+        BlockStmt newBody = new BlockStmt();
+        newBody.addStatement(assignExpr1);
+        // copied, since adding a statement to the new body takes it out of the old one
+        for (Statement statement : new ArrayList<>(body)) {
+            newBody.addStatement(statement);
+        }
+
+        noIteratorStmt.setBody(newBody);
+        return noIteratorStmt;
+    }
+}
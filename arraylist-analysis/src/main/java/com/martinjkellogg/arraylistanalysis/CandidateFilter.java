@@ -0,0 +1,83 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A quick look at the raw bytes of a file, to skip files that can't contain anything we'd rewrite without
+ * parsing them. Most files don't, and parsing (with the symbol solver set up) is by far the most expensive
+ * thing we do to a file.
+ *
+ * The rewrites need a local initialized with "new ArrayList" (or "new LinkedList", when those are replaced), so
+ * a file that never mentions ArrayList can't have candidates, and the loop rewrites also need a for or while
+ * loop, or a call to forEach. Mentions in comments or strings just mean the file gets parsed for nothing. The
+ * one thing that can hide a name from a byte search is a unicode escape (any letter of a name can be written as
+ * one), so files with those are always parsed.
+ */
+class CandidateFilter {
+
+    private static final byte[] ARRAY_LIST = "ArrayList".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINKED_LIST = "LinkedList".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FOR = "for".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WHILE = "while".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FOR_EACH = "forEach".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UNICODE_ESCAPE = "\\u".getBytes(StandardCharsets.US_ASCII);
+
+    private CandidateFilter() {
+    }
+
+    /**
+     * Whether the file has to be parsed.
+     *
+     * @param primitiveLists whether list declarations are candidates on their own, see {@link PrimitiveLists} and
+     *                       {@link PresizedLists}
+     * @param linkedLists whether LinkedList declarations are candidates on their own, see {@link LinkedLists}
+     */
+    static boolean mayContainCandidates(byte[] content, boolean primitiveLists, boolean linkedLists) {
+        if (indexOf(content, UNICODE_ESCAPE, 0) >= 0) {
+            return true;
+        }
+        if (linkedLists && indexOf(content, LINKED_LIST, 0) >= 0) {
+            return true;
+        }
+        if (indexOf(content, ARRAY_LIST, 0) < 0) {
+            return false;
+        }
+        return primitiveLists || containsWord(content, FOR) || containsWord(content, WHILE) ||
+                indexOf(content, FOR_EACH, 0) >= 0;
+    }
+
+    // "for" on its own, not as part of "format" or "platform"
+    private static boolean containsWord(byte[] content, byte[] word) {
+        for (int i = indexOf(content, word, 0); i >= 0; i = indexOf(content, word, i + 1)) {
+            boolean startsWord = i == 0 || !isIdentifierPart(content[i - 1]);
+            boolean endsWord = i + word.length == content.length || !isIdentifierPart(content[i + word.length]);
+            if (startsWord && endsWord) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // anything outside ASCII might be a letter, so it counts as one
+    private static boolean isIdentifierPart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b == '$' ||
+                b < 0;
+    }
+
+    private static int indexOf(byte[] content, byte[] pattern, int from) {
+        int last = content.length - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (content[i] != pattern[0]) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (content[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
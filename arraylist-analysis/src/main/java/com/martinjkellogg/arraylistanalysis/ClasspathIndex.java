@@ -0,0 +1,474 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A memory-mapped index from type names to where they're defined on a classpath of jars, class directories and
+ * source roots. Opening a jar to find out what's in it means reading its whole central directory, and a
+ * JarTypeSolver does that for every jar up front and keeps all of it on the heap. The index is built once,
+ * written next to the result cache, and mapped on later runs, so startup only reads the directory listings
+ * (to notice changes) and looking up a name is a binary search through pages the OS loads on demand.
+ *
+ * Names are canonical ("java.util.Map.Entry"), like the symbol solver asks for them. Only top level types of
+ * source roots are indexed, since finding member types would mean parsing the files. When a name is on the
+ * classpath twice, the first element wins, like it does for the compiler.
+ *
+ * The file looks like this (all numbers big endian):
+ * <pre>
+ *     int magic, int version, 32 bytes classpath fingerprint
+ *     int element count, then per element: byte kind, short length, path in UTF-8
+ *     int type count, then an int offset per type, sorted by name
+ *     per type: short length, name in UTF-8, short element, short length, entry in UTF-8
+ * </pre>
+ * An entry is the path of the class or source file inside its element, with slashes.
+ *
+ * One instance is meant to be shared by every thread; lookups don't change anything.
+ */
+public class ClasspathIndex {
+
+    private static final int MAGIC = 0x414c4958;
+    private static final int VERSION = 1;
+
+    static final byte JAR = 0;
+    static final byte DIRECTORY = 1;
+
+    private final String fingerprint;
+    private final List<Path> elements;
+    private final byte[] kinds;
+    private final MappedByteBuffer buffer;
+    private final int typeCount;
+    private final int offsets;
+
+    // opened on first use and kept open for the rest of the run; most jars are never needed
+    private final Map<Integer, JarFile> jars = new HashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong found = new AtomicLong();
+    private final AtomicLong loaded = new AtomicLong();
+
+    private ClasspathIndex(String fingerprint, List<Path> elements, byte[] kinds, MappedByteBuffer buffer,
+                           int typeCount, int offsets) {
+        this.fingerprint = fingerprint;
+        this.elements = elements;
+        this.kinds = kinds;
+        this.buffer = buffer;
+        this.typeCount = typeCount;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Splits a classpath the way java does, with the platform's path separator.
+     */
+    public static List<Path> parseClasspath(String classpath) {
+        List<Path> paths = new ArrayList<>();
+        for (String element : classpath.split(File.pathSeparator)) {
+            if (!element.isEmpty()) {
+                paths.add(Paths.get(element));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Maps the index in the given file, rebuilding it first if it's missing or describes a different classpath.
+     * Elements that don't exist are ignored, like java does.
+     *
+     * @param classpath jars, directories of class files, and source roots, in lookup order
+     */
+    public static ClasspathIndex open(Path file, List<Path> classpath) throws IOException {
+        List<Path> elements = classpath.stream()
+                .filter(Files::exists)
+                .map(path -> path.toAbsolutePath().normalize())
+                .collect(Collectors.toList());
+        byte[] kinds = new byte[elements.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = Files.isDirectory(elements.get(i)) ? DIRECTORY : JAR;
+        }
+        byte[] fingerprint = fingerprint(elements, kinds);
+
+        ClasspathIndex index = map(file, fingerprint, elements, kinds);
+        if (index == null) {
+            write(file, fingerprint, elements, kinds);
+            index = map(file, fingerprint, elements, kinds);
+            if (index == null) {
+                throw new IOException("could not read the index we just wrote to " + file);
+            }
+        }
+        return index;
+    }
+
+    // jars are identified by size and modification time; directories by what's in them, since adding a file
+    // doesn't change the time of every directory above it
+    private static byte[] fingerprint(List<Path> elements, byte[] kinds) throws IOException {
+        MessageDigest digest = sha256();
+        for (int i = 0; i < elements.size(); i++) {
+            Path element = elements.get(i);
+            digest.update((element + "\n").getBytes(StandardCharsets.UTF_8));
+            if (kinds[i] == JAR) {
+                digest.update((Files.size(element) + " " + Files.getLastModifiedTime(element).toMillis() + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            } else {
+                digest.update((directoryFingerprint(element) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Identifies what's in a class directory by the name, size and modification time of every class and source
+     * file below it, so a class that's rebuilt under the same name counts as a change.
+     *
+     * @return a hash, in hex
+     */
+    public static String directoryFingerprint(Path directory) throws IOException {
+        MessageDigest digest = sha256();
+        for (String entry : listDirectory(directory)) {
+            Path file = directory.resolve(entry);
+            digest.update((entry + " " + Files.size(file) + " " + Files.getLastModifiedTime(file).toMillis() + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be available", e);
+        }
+    }
+
+    // class and source files below a directory, relative and with slashes, in a fixed order
+    private static List<String> listDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths
+                    .filter(path -> path.toString().endsWith(".class") || path.toString().endsWith(".java"))
+                    .map(path -> directory.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static ClasspathIndex map(Path file, byte[] fingerprint, List<Path> elements, byte[] kinds)
+            throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // a file from an older version, another classpath or a crash halfway through writing: build a new one
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            for (int i = 0; i < fingerprint.length; i++) {
+                if (buffer.get(8 + i) != fingerprint[i]) {
+                    return null;
+                }
+            }
+            buffer.position(8 + fingerprint.length);
+            int elementCount = buffer.getInt();
+            if (elementCount != elements.size()) {
+                return null;
+            }
+            for (int i = 0; i < elementCount; i++) {
+                buffer.get();
+                int length = buffer.getShort() & 0xffff;
+                buffer.position(buffer.position() + length);
+            }
+            int typeCount = buffer.getInt();
+            int offsets = buffer.position();
+            if (offsets + 4L * typeCount > buffer.limit()) {
+                return null;
+            }
+            return new ClasspathIndex(hex(fingerprint), elements, kinds, buffer, typeCount, offsets);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void write(Path file, byte[] fingerprint, List<Path> elements, byte[] kinds) throws IOException {
+        // name -> element and entry; the first element that has a name wins
+        Map<String, Location> types = new HashMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            for (String entry : kinds[i] == JAR ? listJar(elements.get(i)) : listDirectory(elements.get(i))) {
+                String name = typeName(entry);
+                if (name != null) {
+                    types.putIfAbsent(name, new Location(i, kinds[i], entry));
+                }
+            }
+        }
+
+        List<byte[]> names = types.keySet().stream()
+                .map(name -> name.getBytes(StandardCharsets.UTF_8))
+                .sorted(ClasspathIndex::compare)
+                .collect(Collectors.toList());
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        // written next to the index and moved into place, so a concurrent run never maps half a file
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(fingerprint);
+                out.writeInt(elements.size());
+                for (int i = 0; i < elements.size(); i++) {
+                    out.writeByte(kinds[i]);
+                    writeString(out, elements.get(i).toString().getBytes(StandardCharsets.UTF_8));
+                }
+
+                out.writeInt(names.size());
+                int offset = out.size() + 4 * names.size();
+                List<byte[]> entries = new ArrayList<>(names.size());
+                for (byte[] name : names) {
+                    String type = new String(name, StandardCharsets.UTF_8);
+                    byte[] entry = types.get(type).entry.getBytes(StandardCharsets.UTF_8);
+                    entries.add(entry);
+                    out.writeInt(offset);
+                    offset += 2 + name.length + 2 + 2 + entry.length;
+                }
+                for (int i = 0; i < names.size(); i++) {
+                    byte[] name = names.get(i);
+                    writeString(out, name);
+                    out.writeShort(types.get(new String(name, StandardCharsets.UTF_8)).element);
+                    writeString(out, entries.get(i));
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes.length > 0xffff) {
+            throw new IOException("name too long for an index: " + new String(bytes, StandardCharsets.UTF_8));
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static List<String> listJar(Path jar) throws IOException {
+        List<String> entries = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry entry = jarEntries.nextElement();
+                if (!entry.isDirectory()) {
+                    entries.add(entry.getName());
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The canonical name of the type in a jar entry or a file below a directory, or null if it isn't a type we
+     * can look up: anonymous and local classes, module-info, package-info, resources and the versioned copies
+     * in multi-release jars.
+     */
+    static String typeName(String entry) {
+        String path;
+        if (entry.endsWith(".class")) {
+            path = entry.substring(0, entry.length() - ".class".length());
+        } else if (entry.endsWith(".java")) {
+            path = entry.substring(0, entry.length() - ".java".length());
+        } else {
+            return null;
+        }
+        if (path.startsWith("META-INF/") || path.endsWith("module-info") || path.endsWith("package-info")) {
+            return null;
+        }
+
+        String[] parts = path.split("[/$]");
+        for (String part : parts) {
+            // Outer$1 and Outer$1Local are anonymous and local classes
+            if (part.isEmpty() || Character.isDigit(part.charAt(0))) {
+                return null;
+            }
+        }
+        return String.join(".", parts);
+    }
+
+    /**
+     * Where a type is, or null if the classpath doesn't have it.
+     */
+    Location find(String name) {
+        lookups.incrementAndGet();
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+
+        int low = 0;
+        int high = typeCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = buffer.getInt(offsets + 4 * middle);
+            int c = compare(buffer, record, key);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                found.incrementAndGet();
+                int nameLength = buffer.getShort(record) & 0xffff;
+                int element = buffer.getShort(record + 2 + nameLength) & 0xffff;
+                int entryStart = record + 2 + nameLength + 2;
+                byte[] entry = new byte[buffer.getShort(entryStart) & 0xffff];
+                // absolute reads only: the position is shared by every thread
+                for (int i = 0; i < entry.length; i++) {
+                    entry[i] = buffer.get(entryStart + 2 + i);
+                }
+                return new Location(element, kinds[element], new String(entry, StandardCharsets.UTF_8));
+            }
+        }
+        return null;
+    }
+
+    // the name stored at the record, compared to the key, as unsigned bytes
+    static int compare(ByteBuffer buffer, int record, byte[] key) {
+        int length = buffer.getShort(record) & 0xffff;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int c = (buffer.get(record + 2 + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Reads a class file the index pointed to.
+     */
+    byte[] read(Location location) throws IOException {
+        loaded.incrementAndGet();
+        Path element = elements.get(location.element);
+        if (location.kind == DIRECTORY) {
+            return Files.readAllBytes(element.resolve(location.entry));
+        }
+
+        JarFile jar;
+        synchronized (jars) {
+            jar = jars.get(location.element);
+            if (jar == null) {
+                jar = new JarFile(element.toFile());
+                jars.put(location.element, jar);
+            }
+        }
+        JarEntry entry = jar.getJarEntry(location.entry);
+        if (entry == null) {
+            throw new IOException(location.entry + " is no longer in " + element);
+        }
+        try (InputStream in = jar.getInputStream(entry)) {
+            return readFully(in);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = in.read(chunk)) >= 0) {
+            bytes.write(chunk, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    Path getElement(int element) {
+        return elements.get(element);
+    }
+
+    /**
+     * Identifies the classpath the index was built for, to key cached results that depend on it.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getTypeCount() {
+        return typeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Classpath index: " + typeCount + " types in " + elements.size() + " elements; " +
+                lookups + " lookups, " + found + " found, " + loaded + " class files read";
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A class file or source file on the classpath.
+     */
+    static class Location {
+        final int element;
+        final byte kind;
+        final String entry;
+
+        Location(int element, byte kind, String entry) {
+            this.element = element;
+            this.kind = kind;
+            this.entry = entry;
+        }
+
+        boolean isSource() {
+            return entry.endsWith(".java");
+        }
+
+        /** The name the class file was compiled to, with dollars for member types. */
+        String binaryName() {
+            return entry.substring(0, entry.length() - ".class".length()).replace('/', '.');
+        }
+    }
+}
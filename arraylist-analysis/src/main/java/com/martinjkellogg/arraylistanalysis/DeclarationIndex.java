@@ -0,0 +1,450 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.printer.PrettyPrinterConfiguration;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A memory-mapped index of the types declared in the source roots being analyzed, so they resolve against each
+ * other without the symbol solver parsing every file it's pointed to (bodies, comments and all) on every run and
+ * in every thread.
+ *
+ * Every top level type is stored as a stub: its file's package and imports, and the type with its members'
+ * signatures, field types and member types, but no method bodies, initializers or comments. That's everything
+ * the symbol solver reads of a type from another file, and a fraction of the text. A stub is only parsed when
+ * its type is looked up (see {@link IndexedDeclarationTypeSolver}), and only the pages holding it are read.
+ *
+ * Each source file is recorded with the hash of its content. Opening the index hashes the files again, maps the
+ * file as it is if none changed, and otherwise writes a new one that keeps the stubs of the unchanged files
+ * and only parses the changed ones.
+ *
+ * The file looks like this (all numbers big endian):
+ * <pre>
+ *     int magic, int version, 32 bytes fingerprint of the stubs
+ *     int file count, then per file: short length, path in UTF-8, 32 bytes SHA-256 of its content, int number
+ *     of top level types it declares
+ *     int type count, then an int offset per type, sorted by name
+ *     per type: short length, name in UTF-8, int file, int length, stub in UTF-8
+ * </pre>
+ * Names are canonical, like in {@link ClasspathIndex}; when two files declare the same one, the first wins.
+ *
+ * One instance is meant to be shared by every thread; lookups don't change anything.
+ */
+public class DeclarationIndex {
+
+    private static final int MAGIC = 0x414c4458;
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+
+    private final String fingerprint;
+    private final MappedByteBuffer buffer;
+    private final int fileCount;
+    private final int typeCount;
+    private final int offsets;
+    // how many files opening the index had to parse
+    private final int reindexed;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong found = new AtomicLong();
+    private final AtomicLong parsed = new AtomicLong();
+
+    private DeclarationIndex(String fingerprint, MappedByteBuffer buffer, int fileCount, int typeCount, int offsets,
+                             int reindexed) {
+        this.fingerprint = fingerprint;
+        this.buffer = buffer;
+        this.fileCount = fileCount;
+        this.typeCount = typeCount;
+        this.offsets = offsets;
+        this.reindexed = reindexed;
+    }
+
+    /**
+     * Maps the index in the given file, bringing it up to date with the source roots first. Roots that don't
+     * exist are ignored, and so are directories without sources, so a classpath can be passed as is.
+     */
+    public static DeclarationIndex open(Path file, List<Path> sourceRoots) throws IOException {
+        // the first root a file is found under wins, like for the types in it
+        Set<Path> sources = new LinkedHashSet<>();
+        for (Path root : sourceRoots) {
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> paths = Files.walk(root)) {
+                    paths.filter(path -> path.toString().endsWith(".java") && Files.isRegularFile(path))
+                            .map(path -> path.toAbsolutePath().normalize())
+                            .sorted()
+                            .forEach(sources::add);
+                }
+            }
+        }
+        List<Path> files = new ArrayList<>(sources);
+        List<byte[]> hashes = new ArrayList<>(files.size());
+        for (Path source : files) {
+            hashes.add(sha256().digest(Files.readAllBytes(source)));
+        }
+
+        DeclarationIndex index = map(file, 0);
+        if (index != null && index.describes(files, hashes)) {
+            return index;
+        }
+        int reindexed = write(file, files, hashes, index);
+        index = map(file, reindexed);
+        if (index == null) {
+            throw new IOException("could not read the index we just wrote to " + file);
+        }
+        return index;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be available", e);
+        }
+    }
+
+    private static DeclarationIndex map(Path file, int reindexed) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // a file from an older version or a crash halfway through writing: build a new one
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            byte[] fingerprint = new byte[HASH_LENGTH];
+            buffer.position(8);
+            buffer.get(fingerprint);
+            int fileCount = buffer.getInt();
+            for (int i = 0; i < fileCount; i++) {
+                int length = buffer.getShort() & 0xffff;
+                buffer.position(buffer.position() + length + HASH_LENGTH + 4);
+            }
+            int typeCount = buffer.getInt();
+            int offsets = buffer.position();
+            if (offsets + 4L * typeCount > buffer.limit()) {
+                return null;
+            }
+            return new DeclarationIndex(ClasspathIndex.hex(fingerprint), buffer, fileCount, typeCount, offsets,
+                    reindexed);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // whether the index was built from exactly these files, with this content
+    private boolean describes(List<Path> files, List<byte[]> hashes) {
+        if (fileCount != files.size()) {
+            return false;
+        }
+        int position = 8 + HASH_LENGTH + 4;
+        for (int i = 0; i < fileCount; i++) {
+            int length = buffer.getShort(position) & 0xffff;
+            if (!string(position + 2, length).equals(files.get(i).toString()) ||
+                    !Arrays.equals(bytes(position + 2 + length, HASH_LENGTH), hashes.get(i))) {
+                return false;
+            }
+            position += 2 + length + HASH_LENGTH + 4;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the index for the files, taking the stubs of the ones that didn't change from the previous index.
+     *
+     * @return how many files had to be parsed
+     */
+    private static int write(Path file, List<Path> files, List<byte[]> hashes, DeclarationIndex previous)
+            throws IOException {
+        Map<String, List<Stub>> unchanged = previous == null ? new HashMap<>() : previous.stubsByFile(files, hashes);
+
+        // name -> file and stub; the first file that has a name wins
+        Map<String, Stub> types = new LinkedHashMap<>();
+        int[] declared = new int[files.size()];
+        int reindexed = 0;
+        JavaParser parser = new JavaParser();
+        for (int i = 0; i < files.size(); i++) {
+            List<Stub> stubs = unchanged.get(files.get(i).toString());
+            if (stubs == null) {
+                stubs = stubs(parser, Files.readAllBytes(files.get(i)));
+                reindexed++;
+            }
+            declared[i] = stubs.size();
+            for (Stub stub : stubs) {
+                types.putIfAbsent(stub.name, new Stub(i, stub.name, stub.text));
+            }
+        }
+
+        List<byte[]> names = types.keySet().stream()
+                .map(name -> name.getBytes(StandardCharsets.UTF_8))
+                .sorted(ClasspathIndex::compare)
+                .collect(Collectors.toList());
+        MessageDigest fingerprint = sha256();
+        for (byte[] name : names) {
+            fingerprint.update(name);
+            fingerprint.update((byte) 0);
+            fingerprint.update(types.get(new String(name, StandardCharsets.UTF_8)).text);
+            fingerprint.update((byte) 0);
+        }
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        // written next to the index and moved into place, so a concurrent run never maps half a file
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(fingerprint.digest());
+                out.writeInt(files.size());
+                for (int i = 0; i < files.size(); i++) {
+                    ClasspathIndex.writeString(out, files.get(i).toString().getBytes(StandardCharsets.UTF_8));
+                    out.write(hashes.get(i));
+                    out.writeInt(declared[i]);
+                }
+
+                out.writeInt(names.size());
+                int offset = out.size() + 4 * names.size();
+                for (byte[] name : names) {
+                    out.writeInt(offset);
+                    offset += 2 + name.length + 4 + 4 + types.get(new String(name, StandardCharsets.UTF_8)).text.length;
+                }
+                for (byte[] name : names) {
+                    Stub stub = types.get(new String(name, StandardCharsets.UTF_8));
+                    ClasspathIndex.writeString(out, name);
+                    out.writeInt(stub.file);
+                    out.writeInt(stub.text.length);
+                    out.write(stub.text);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return reindexed;
+    }
+
+    // the stubs of the files that are still there with the same content, by path. Reads the whole index, but only
+    // when something changed.
+    private Map<String, List<Stub>> stubsByFile(List<Path> files, List<byte[]> hashes) {
+        Map<String, byte[]> current = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            current.put(files.get(i).toString(), hashes.get(i));
+        }
+
+        String[] paths = new String[fileCount];
+        int[] declared = new int[fileCount];
+        int position = 8 + HASH_LENGTH + 4;
+        for (int i = 0; i < fileCount; i++) {
+            int length = buffer.getShort(position) & 0xffff;
+            String path = string(position + 2, length);
+            if (Arrays.equals(bytes(position + 2 + length, HASH_LENGTH), current.get(path))) {
+                paths[i] = path;
+                declared[i] = buffer.getInt(position + 2 + length + HASH_LENGTH);
+            }
+            position += 2 + length + HASH_LENGTH + 4;
+        }
+
+        Map<String, List<Stub>> stubs = new HashMap<>();
+        for (int i = 0; i < fileCount; i++) {
+            if (paths[i] != null) {
+                stubs.put(paths[i], new ArrayList<>());
+            }
+        }
+        for (int i = 0; i < typeCount; i++) {
+            int record = buffer.getInt(offsets + 4 * i);
+            int nameLength = buffer.getShort(record) & 0xffff;
+            int fileIndex = buffer.getInt(record + 2 + nameLength);
+            if (paths[fileIndex] != null) {
+                int textLength = buffer.getInt(record + 2 + nameLength + 4);
+                stubs.get(paths[fileIndex]).add(new Stub(fileIndex, string(record + 2, nameLength),
+                        bytes(record + 2 + nameLength + 8, textLength)));
+            }
+        }
+        // a type another file declared first isn't in the index, but it's this file's if that one changed; such
+        // files are parsed again
+        for (int i = 0; i < fileCount; i++) {
+            if (paths[i] != null && stubs.get(paths[i]).size() != declared[i]) {
+                stubs.remove(paths[i]);
+            }
+        }
+        return stubs;
+    }
+
+    /**
+     * The stubs of every top level type in a source file, or none if it doesn't parse.
+     */
+    static List<Stub> stubs(JavaParser parser, byte[] content) {
+        ParseResult<CompilationUnit> result = parser.parse(new ByteArrayInputStream(content), StandardCharsets.UTF_8);
+        if (!result.isSuccessful() || !result.getResult().isPresent()) {
+            return new ArrayList<>();
+        }
+        CompilationUnit cu = result.getResult().get();
+        String prefix = cu.getPackageDeclaration().map(p -> p.getNameAsString() + ".").orElse("");
+        PrettyPrinterConfiguration configuration = new PrettyPrinterConfiguration().setPrintComments(false);
+
+        List<Stub> stubs = new ArrayList<>();
+        for (TypeDeclaration<?> type : cu.getTypes()) {
+            CompilationUnit stub = new CompilationUnit();
+            cu.getPackageDeclaration().ifPresent(p -> stub.setPackageDeclaration(p.clone()));
+            for (ImportDeclaration importDeclaration : cu.getImports()) {
+                stub.addImport(importDeclaration.clone());
+            }
+            TypeDeclaration<?> stripped = type.clone();
+            strip(stripped);
+            stub.addType(stripped);
+            stubs.add(new Stub(-1, prefix + type.getNameAsString(),
+                    stub.toString(configuration).getBytes(StandardCharsets.UTF_8)));
+        }
+        return stubs;
+    }
+
+    // everything the symbol solver doesn't read of a type in another file
+    private static void strip(TypeDeclaration<?> type) {
+        List<Node> nodes = new ArrayList<>();
+        Traversal.preOrder(type, (node, depth) -> {
+            if (node instanceof MethodDeclaration || node instanceof ConstructorDeclaration ||
+                    node instanceof InitializerDeclaration || node instanceof VariableDeclarator ||
+                    node instanceof EnumConstantDeclaration) {
+                nodes.add(node);
+            }
+        });
+        for (Node node : nodes) {
+            if (node instanceof MethodDeclaration) {
+                // an empty body rather than none, so the method isn't mistaken for an abstract one
+                MethodDeclaration method = (MethodDeclaration) node;
+                if (method.getBody().isPresent()) {
+                    method.setBody(new BlockStmt());
+                }
+            } else if (node instanceof ConstructorDeclaration) {
+                ((ConstructorDeclaration) node).setBody(new BlockStmt());
+            } else if (node instanceof InitializerDeclaration) {
+                node.remove();
+            } else if (node instanceof VariableDeclarator) {
+                ((VariableDeclarator) node).removeInitializer();
+            } else {
+                ((EnumConstantDeclaration) node).getArguments().clear();
+            }
+        }
+    }
+
+    /**
+     * The stub of a top level type, or null if the source roots don't declare it.
+     */
+    String find(String name) {
+        lookups.incrementAndGet();
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+
+        int low = 0;
+        int high = typeCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = buffer.getInt(offsets + 4 * middle);
+            int c = ClasspathIndex.compare(buffer, record, key);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                found.incrementAndGet();
+                int nameLength = buffer.getShort(record) & 0xffff;
+                int textLength = buffer.getInt(record + 2 + nameLength + 4);
+                return string(record + 2 + nameLength + 8, textLength);
+            }
+        }
+        return null;
+    }
+
+    // absolute reads only: the position is shared by every thread
+    private byte[] bytes(int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return bytes;
+    }
+
+    private String string(int position, int length) {
+        return new String(bytes(position, length), StandardCharsets.UTF_8);
+    }
+
+    /** Counts a stub a type solver parsed. */
+    void parsed() {
+        parsed.incrementAndGet();
+    }
+
+    /**
+     * Identifies the declarations in the index: it only changes when a signature does, not when a method body
+     * does, so it can key cached results of files that resolve against the others.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getTypeCount() {
+        return typeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Declaration index: " + typeCount + " types in " + fileCount + " files, " + reindexed + " re-indexed; " +
+                lookups + " lookups, " + found + " found, " + parsed + " stubs parsed";
+    }
+
+    /**
+     * A type and its stub, and the index of the file it's from once it's in an index.
+     */
+    static class Stub {
+        final int file;
+        final String name;
+        final byte[] text;
+
+        Stub(int file, String name, byte[] text) {
+            this.file = file;
+            this.name = name;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.WhileStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The declarations and uses of local variables in a block and everything nested in it, built in one traversal.
+ * The traversal doesn't recurse (see {@link Traversal}), so it handles any depth of nesting.
+ *
+ * For every variable name it records where it's declared with a new ArrayList, where it's aliased (it
+ * initializes another variable, or shows up on either side of an assignment) and where it's passed to a method,
+ * as well as every call to (or method reference to) one of the methods a rewritten loop must not call, and
+ * every other use of a name that could hand the variable to someone else, like "flag ? list : other" or
+ * "list.subList(0, 1)", whose result changes the list.
+ * Nodes are numbered in pre-order, so "somewhere inside block b" is a range of numbers, and the questions
+ * isLocalArrayList and callsModificationMethods ask about any nested block or loop are a binary search instead of
+ * another findAll over it.
+ *
+ * The index is a snapshot: nodes added to the tree later aren't in it. The loop rewrite only adds nodes that
+ * never declare, alias or pass a list, so the answers stay the same; other rewrites drop the index through
+ * {@link RuleContext#changed}.
+ */
+class DefUseIndex {
+
+    // the methods of a list whose result can't change it: primitives, strings, elements, copies and streams
+    // (which can't remove). Anything else, like subList or iterator, hands out a view the list changes through.
+    private static final Set<String> NO_VIEW_METHODS = new HashSet<>(Arrays.asList(
+            "size", "isEmpty", "contains", "containsAll", "indexOf", "lastIndexOf", "get", "getFirst", "getLast",
+            "equals", "hashCode", "toString", "toArray", "clone", "stream", "parallelStream", "spliterator",
+            "forEach", "ensureCapacity", "trimToSize", "add", "addAll", "addFirst", "addLast", "offer", "push",
+            "remove", "removeFirst", "removeLast", "removeAll", "removeIf", "removeRange", "retainAll", "set",
+            "clear", "sort", "replaceAll", "poll", "pop", "peek", "element"));
+
+    private int counter = 0;
+
+    // the range of pre-order numbers of every block, loop and lambda in the indexed subtree. Nodes compare
+    // structurally, but two identical blocks are still different scopes, so this is by identity.
+    private final Map<Node, int[]> ranges = new IdentityHashMap<>();
+
+    private final Positions declarations = new Positions();
+    private final Positions bannedCalls = new Positions();
+    // the calls and method references at those positions, in the same order
+    private final List<Expression> bannedCallNodes = new ArrayList<>();
+    private final Map<String, Positions> newArrayListDeclarations = new HashMap<>();
+    private final Map<String, Positions> aliases = new HashMap<>();
+    private final Map<String, Positions> arguments = new HashMap<>();
+    private final Map<String, Positions> otherUses = new HashMap<>();
+
+    private DefUseIndex() {
+    }
+
+    /**
+     * Finds the index that covers the block, building one if there is none yet. A new index is rooted at the
+     * outermost block around this one and registered for every block in it, so neither the blocks nested in this
+     * one nor the ones around it need their own, whichever of them is asked about first.
+     *
+     * @param known the indexes built so far, by block. Nodes compare structurally, so this should be an
+     *              IdentityHashMap.
+     */
+    static DefUseIndex of(BlockStmt block, Map<BlockStmt, DefUseIndex> known) {
+        DefUseIndex index = known.get(block);
+        if (index == null) {
+            BlockStmt root = block;
+            for (Node node = block; node != null; node = node.getParentNode().orElse(null)) {
+                if (node instanceof BlockStmt) {
+                    root = (BlockStmt) node;
+                }
+            }
+            index = new DefUseIndex();
+            index.visit(root);
+            for (Node nested : index.ranges.keySet()) {
+                if (nested instanceof BlockStmt) {
+                    known.put((BlockStmt) nested, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    private void visit(BlockStmt root) {
+        Traversal.walk(root, (node, depth) -> {
+            int position = counter++;
+            record(node, position);
+            if (node instanceof BlockStmt || isLoop(node)) {
+                ranges.put(node, new int[]{position, -1});
+            }
+        }, (node, depth) -> {
+            int[] range = ranges.get(node);
+            if (range != null) {
+                range[1] = counter - 1;
+            }
+        });
+    }
+
+    // the nodes whose body runs once per element of a list, in one of the shapes the rules rewrite
+    private static boolean isLoop(Node node) {
+        return node instanceof ForEachStmt || node instanceof WhileStmt || node instanceof ForStmt ||
+                node instanceof LambdaExpr;
+    }
+
+    private void record(Node node, int position) {
+        if (node instanceof VariableDeclarationExpr) {
+            declarations.add(position);
+
+            for (VariableDeclarator declarator : ((VariableDeclarationExpr) node).getVariables()) {
+                if (!declarator.getInitializer().isPresent()) {
+                    continue;
+                }
+                Expression initializer = declarator.getInitializer().get();
+
+                if (initializer.isObjectCreationExpr() &&
+                        "ArrayList".equals(initializer.asObjectCreationExpr().getType().getName().toString())) {
+                    positions(newArrayListDeclarations, declarator.getNameAsString()).add(position);
+                } else if (initializer.isNameExpr() &&
+                        !initializer.asNameExpr().getName().equals(declarator.getName())) {
+                    // "List<String> alias = list;"
+                    positions(aliases, initializer.asNameExpr().getNameAsString()).add(position);
+                }
+            }
+        } else if (node instanceof AssignExpr) {
+            // the list may neither be reassigned nor assigned to something else
+            AssignExpr assignExpr = (AssignExpr) node;
+            if (assignExpr.getTarget().isNameExpr()) {
+                positions(aliases, assignExpr.getTarget().asNameExpr().getNameAsString()).add(position);
+            }
+            if (assignExpr.getValue().isNameExpr()) {
+                positions(aliases, assignExpr.getValue().asNameExpr().getNameAsString()).add(position);
+            }
+        } else if (node instanceof MethodCallExpr) {
+            MethodCallExpr methodCall = (MethodCallExpr) node;
+            if (ArrayListAnalyzer.isBannedMethod(methodCall.getNameAsString())) {
+                bannedCalls.add(position);
+                bannedCallNodes.add(methodCall);
+            }
+            for (Expression argument : methodCall.getArguments()) {
+                if (argument.isNameExpr()) {
+                    positions(arguments, argument.asNameExpr().getNameAsString()).add(position);
+                }
+            }
+        } else if (node instanceof MethodReferenceExpr) {
+            // "other.forEach(list::add)"
+            MethodReferenceExpr reference = (MethodReferenceExpr) node;
+            if (ArrayListAnalyzer.isBannedMethod(reference.getIdentifier())) {
+                bannedCalls.add(position);
+                bannedCallNodes.add(reference);
+            } else {
+                // "list::subList" hands out a view of it
+                referencedName(reference).ifPresent(name -> positions(otherUses, name).add(position));
+            }
+        } else if (node instanceof NameExpr && !isAccountedFor((NameExpr) node)) {
+            positions(otherUses, ((NameExpr) node).getNameAsString()).add(position);
+        }
+    }
+
+    // uses recorded above (aliases, arguments and method references), and the ones that can't hand the variable
+    // on: calling a method on it that returns no view of it, and looping over it
+    private static boolean isAccountedFor(NameExpr name) {
+        Node parent = name.getParentNode().orElse(null);
+        if (parent instanceof MethodCallExpr) {
+            MethodCallExpr call = (MethodCallExpr) parent;
+            return !call.getScope().filter(scope -> scope == name).isPresent() ||
+                    NO_VIEW_METHODS.contains(call.getNameAsString());
+        } else if (parent instanceof ForEachStmt) {
+            return ((ForEachStmt) parent).getIterable() == name;
+        } else if (parent instanceof VariableDeclarator || parent instanceof AssignExpr) {
+            return true;
+        } else if (parent instanceof FieldAccessExpr) {
+            return ((FieldAccessExpr) parent).getScope() == name;
+        }
+        return parent instanceof MethodReferenceExpr;
+    }
+
+    /**
+     * The variable the method reference is bound to, if it may be one: the parser can't tell "list::add" from
+     * "List::add", so the scope is a type with that name rather than a name.
+     */
+    static Optional<String> referencedName(MethodReferenceExpr reference) {
+        Expression scope = reference.getScope();
+        if (scope.isNameExpr()) {
+            return Optional.of(scope.asNameExpr().getNameAsString());
+        }
+        if (scope.isTypeExpr() && scope.asTypeExpr().getType().isClassOrInterfaceType()) {
+            ClassOrInterfaceType type = scope.asTypeExpr().getType().asClassOrInterfaceType();
+            if (!type.getScope().isPresent() && !type.getTypeArguments().isPresent()) {
+                return Optional.of(type.getNameAsString());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Positions positions(Map<String, Positions> map, String name) {
+        return map.computeIfAbsent(name, k -> new Positions());
+    }
+
+    /** Whether anything at all is declared in the block. */
+    boolean hasDeclarations(BlockStmt block) {
+        return declarations.anyIn(range(block));
+    }
+
+    /** Whether the block declares the variable and initializes it with "new ArrayList". */
+    boolean isDeclaredAsNewArrayList(BlockStmt block, String name) {
+        return anyIn(newArrayListDeclarations, name, block);
+    }
+
+    /** Whether the variable initializes another variable, or is on either side of an assignment in the block. */
+    boolean isAliased(BlockStmt block, String name) {
+        return anyIn(aliases, name, block);
+    }
+
+    /** Whether the variable is passed as an argument to a method call in the block. */
+    boolean isPassedAsArgument(BlockStmt block, String name) {
+        return anyIn(arguments, name, block);
+    }
+
+    /**
+     * Whether the variable is used in the block in some way other than the ones the other questions ask about,
+     * or calling a method on it or looping over it. If it isn't, and it isn't aliased either, no other expression
+     * can evaluate to it.
+     */
+    boolean hasOtherUses(BlockStmt block, String name) {
+        return anyIn(otherUses, name, block);
+    }
+
+    /**
+     * The calls to add, remove, ... in the loop, and the method references to them, in source order.
+     *
+     * @param loop a loop or lambda that was in the tree when the index was built
+     */
+    List<Expression> bannedCalls(Node loop) {
+        int[] range = range(loop);
+        List<Expression> calls = new ArrayList<>();
+        for (int i = bannedCalls.first(range[0]); i < bannedCalls.size && bannedCalls.values[i] <= range[1]; i++) {
+            calls.add(bannedCallNodes.get(i));
+        }
+        return calls;
+    }
+
+    /**
+     * Same as {@link ArrayListAnalyzer#callsModificationMethods(Node)}, without walking the loop again.
+     *
+     * @param loop a loop or lambda that was in the tree when the index was built
+     */
+    boolean callsBannedMethod(Node loop) {
+        return bannedCalls.anyIn(range(loop));
+    }
+
+    /** Whether the node was in the tree when the index was built, and is a block, a loop or a lambda. */
+    boolean covers(Node node) {
+        return ranges.containsKey(node);
+    }
+
+    private boolean anyIn(Map<String, Positions> map, String name, BlockStmt block) {
+        Positions positions = map.get(name);
+        return positions != null && positions.anyIn(range(block));
+    }
+
+    private int[] range(Node node) {
+        int[] range = ranges.get(node);
+        if (range == null) {
+            throw new IllegalArgumentException("node is not covered by this index");
+        }
+        return range;
+    }
+
+    /**
+     * A growable list of pre-order numbers. They're added during the traversal, so they're always sorted.
+     */
+    private static class Positions {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+
+        boolean anyIn(int[] range) {
+            int i = first(range[0]);
+            return i < size && values[i] <= range[1];
+        }
+
+        // the index of the first position at or after the given one, or size if there's none
+        int first(int position) {
+            int i = Arrays.binarySearch(values, 0, size, position);
+            // not found: -(insertion point) - 1, and the insertion point is the first position after it
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.LocalClassDeclarationStmt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Where a program spent its time, from the execution samples of a Flight Recorder recording, e.g. one made with
+ * {@code java -XX:StartFlightRecording=filename=app.jfr ...}. Used to only rewrite loops in code that's hot.
+ *
+ * Every sample is charged to the innermost frame that isn't in the JDK, so the time a loop spends in
+ * ArrayList.get or Iterator.next counts for the method with the loop. Samples are kept by method (overloads
+ * share their samples) and line. Lambdas count for the method they're written in. Methods of anonymous and local
+ * classes have names the source doesn't tell us, so loops in them never look hot.
+ *
+ * Doesn't change once it's read, so one instance can be shared by every thread.
+ */
+public class ExecutionProfile {
+
+    private static final String[] JDK_PACKAGES = {"java.", "javax.", "jdk.", "sun.", "com.sun."};
+
+    // "com.example.Outer$Inner.method" -> line -> samples
+    private final Map<String, NavigableMap<Integer, Long>> samples = new HashMap<>();
+    private final Map<String, Long> methodSamples = new HashMap<>();
+    private long totalSamples;
+    private long applicationSamples;
+
+    private ExecutionProfile() {
+    }
+
+    /**
+     * Reads the execution samples of a recording.
+     *
+     * @throws IOException if the recording can't be read, or this JVM has no Flight Recorder to read it with
+     */
+    public static ExecutionProfile read(Path recording) throws IOException {
+        if (!JfrEvents.isAvailable()) {
+            throw new IOException("reading " + recording + " needs a JVM with Flight Recorder");
+        }
+
+        ExecutionProfile profile = new ExecutionProfile();
+        profile.totalSamples = JfrEvents.readExecutionSamples(recording, (type, method, line) -> {
+            if (isJdk(type)) {
+                return false;
+            }
+            profile.add(type + "." + sourceMethod(method), line);
+            return true;
+        });
+        return profile;
+    }
+
+    private static boolean isJdk(String type) {
+        for (String prefix : JDK_PACKAGES) {
+            if (type.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // javac names the body of a lambda in foo "lambda$foo$0", in a constructor or field "lambda$new$0", and in a
+    // static initializer "lambda$static$0"
+    private static String sourceMethod(String method) {
+        if (!method.startsWith("lambda$")) {
+            return method;
+        }
+        int end = method.indexOf('$', "lambda$".length());
+        String enclosing = end < 0 ? method : method.substring("lambda$".length(), end);
+        return "new".equals(enclosing) ? "<init>" : "static".equals(enclosing) ? "<clinit>" : enclosing;
+    }
+
+    private void add(String method, int line) {
+        applicationSamples++;
+        methodSamples.merge(method, 1L, Long::sum);
+        samples.computeIfAbsent(method, k -> new TreeMap<>()).merge(line, 1L, Long::sum);
+    }
+
+    /**
+     * The name the recording would have for the method (or constructor, or initializer) the node is in, like
+     * "com.example.Outer$Inner.method", or null if we can't tell.
+     */
+    static String methodName(Node node) {
+        String method = null;
+        StringBuilder type = new StringBuilder();
+        for (Node n = node; n != null; n = n.getParentNode().orElse(null)) {
+            if (n instanceof ObjectCreationExpr && ((ObjectCreationExpr) n).getAnonymousClassBody().isPresent() ||
+                    n instanceof LocalClassDeclarationStmt || n instanceof EnumConstantDeclaration) {
+                // javac numbers these: Outer$1, Outer$1Local
+                return null;
+            } else if (method == null && n instanceof MethodDeclaration) {
+                method = ((MethodDeclaration) n).getNameAsString();
+            } else if (method == null && n instanceof ConstructorDeclaration) {
+                method = "<init>";
+            } else if (method == null && n instanceof InitializerDeclaration) {
+                method = ((InitializerDeclaration) n).isStatic() ? "<clinit>" : "<init>";
+            } else if (n instanceof TypeDeclaration) {
+                if (method == null) {
+                    // a field initializer
+                    return null;
+                }
+                type.insert(0, (type.length() == 0 ? "" : "$")).insert(0, ((TypeDeclaration<?>) n).getNameAsString());
+            } else if (n instanceof CompilationUnit) {
+                String pkg = ((CompilationUnit) n).getPackageDeclaration()
+                        .map(p -> p.getNameAsString() + ".").orElse("");
+                return method == null ? null : pkg + type + "." + method;
+            }
+        }
+        return null;
+    }
+
+    /** The samples charged to the method the node is in. */
+    public long methodSamples(Node node) {
+        String method = methodName(node);
+        return method == null ? 0 : methodSamples.getOrDefault(method, 0L);
+    }
+
+    /** The samples charged to the lines of the node, in the method it's in. */
+    public long lineSamples(Node node) {
+        String method = methodName(node);
+        NavigableMap<Integer, Long> lines = method == null ? null : samples.get(method);
+        if (lines == null || !node.getRange().isPresent()) {
+            return 0;
+        }
+        Range range = node.getRange().get();
+        long sum = 0;
+        for (long count : lines.subMap(range.begin.line, true, range.end.line, true).values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    /**
+     * Identifies the samples, so results based on another recording (or none) aren't reused.
+     */
+    public String getFingerprint() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be available", e);
+        }
+        for (Map.Entry<String, Long> entry : new TreeMap<>(methodSamples).entrySet()) {
+            digest.update((entry.getKey() + " " + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Execution profile: " + totalSamples + " samples, " + applicationSamples + " of them in " +
+                methodSamples.size() + " methods outside the JDK";
+    }
+}
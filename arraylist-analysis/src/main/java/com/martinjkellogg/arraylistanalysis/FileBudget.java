@@ -0,0 +1,133 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * How much time and how many AST nodes a single file may take before it's given up on. A few generated or
+ * otherwise pathological files can take longer than the rest of a tree together (the symbol solver is the
+ * usual culprit), and with a budget they're skipped and reported instead of holding a thread for minutes.
+ *
+ * Nothing is interrupted: the parser, the symbol solver and the rule engine call {@link #check} as they go, and
+ * that throws once the time is up. The budget of the file being analyzed is kept per thread, since the type
+ * resolution cache and the rules don't know which file they work on; without one, checks cost a ThreadLocal
+ * lookup.
+ */
+final class FileBudget {
+
+    private static final ThreadLocal<FileBudget> CURRENT = new ThreadLocal<>();
+
+    private final long timeoutMillis;
+    private final int maxNodes;
+    private final long deadline;
+
+    private FileBudget(long timeoutMillis, int maxNodes, long start) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxNodes = maxNodes;
+        this.deadline = start + timeoutMillis * 1_000_000;
+    }
+
+    /**
+     * Starts the budget of a file on the calling thread, until {@link #end()}.
+     *
+     * @param timeoutMillis wall time from start, or 0 for no limit
+     * @param maxNodes nodes in the parsed file, or 0 for no limit
+     * @param start when the file was started on, in {@link System#nanoTime()}
+     */
+    static void start(long timeoutMillis, int maxNodes, long start) {
+        if (timeoutMillis > 0 || maxNodes > 0) {
+            CURRENT.set(new FileBudget(timeoutMillis, maxNodes, start));
+        }
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Throws {@link Exceeded} if the calling thread's file is out of time.
+     *
+     * @param phase what it was doing, for the report
+     */
+    static void check(String phase) {
+        FileBudget budget = CURRENT.get();
+        if (budget != null && budget.timeoutMillis > 0 && System.nanoTime() - budget.deadline > 0) {
+            throw new Exceeded("took more than " + budget.timeoutMillis + " ms while " + phase);
+        }
+    }
+
+    /**
+     * Throws {@link Exceeded} if the calling thread's file has more nodes than it may. Stops counting at the limit.
+     */
+    static void checkNodes(Node root) {
+        FileBudget budget = CURRENT.get();
+        if (budget == null || budget.maxNodes == 0) {
+            return;
+        }
+        int[] count = {0};
+        Traversal.preOrder(root, (node, depth) -> {
+            if (++count[0] > budget.maxNodes) {
+                throw new Exceeded("has more than " + budget.maxNodes + " nodes");
+            }
+        });
+    }
+
+    /**
+     * The input of the parser, checking the time on every read. The parser reads in chunks, so this costs little.
+     */
+    static InputStream checking(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                check("parsing");
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                check("parsing");
+                return super.read(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Goes first in a combined type solver: it never solves anything, it only checks the time whenever the
+     * symbol solver looks a type up, which it does many times in every long resolution.
+     */
+    static class Checkpoint implements TypeSolver {
+
+        private TypeSolver parent;
+
+        @Override
+        public TypeSolver getParent() {
+            return parent;
+        }
+
+        @Override
+        public void setParent(TypeSolver parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+            check("resolving types");
+            return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+        }
+    }
+
+    /**
+     * A file ran out of its budget. Without a stack trace, since it's expected and thrown from deep down.
+     */
+    static class Exceeded extends RuntimeException {
+        Exceeded(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.LocalClassDeclarationStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
+import com.github.javaparser.symbolsolver.javaparsermodel.declarations.JavaParserSymbolDeclaration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Rewrites forEach calls on a local ArrayList, or on its stream, into indexed loops, so they allocate neither a
+ * lambda nor a stream pipeline:
+ * <pre>
+ *     list.forEach(s -&gt; lengths.add(s.length()));      for (int i = 0; i &lt; list.size(); i += 1) {
+ *     list.stream().forEach(s -&gt; { ... });                 String s = list.get(i);
+ *                                                         lengths.add(s.length());
+ *                                                     }
+ * </pre>
+ * The list has to pass the checks of {@link IndexedLoopRule}, with the lambda as the body of the loop. The call has
+ * to be a statement of its own, and the lambda has to have one parameter and no return, which only skips to the
+ * next element. The element is declared with the type of the parameter if it has one, or else with the type
+ * argument of the list's declaration.
+ */
+class ForEachCallRule implements RewriteRule<ForEachCallRule.Call> {
+
+    private final boolean hoistSize;
+    private final ExecutionProfile profile;
+    private final long hotSamples;
+
+    /**
+     * @see IndexedLoopRule#IndexedLoopRule(boolean, ExecutionProfile, long)
+     */
+    ForEachCallRule(boolean hoistSize, ExecutionProfile profile, long hotSamples) {
+        this.hoistSize = hoistSize;
+        this.profile = profile;
+        this.hotSamples = hotSamples;
+    }
+
+    /**
+     * What check found: the list and the element, as the loop declares it.
+     */
+    static class Call {
+        final String list;
+        final VariableDeclarationExpr element;
+        final LambdaExpr lambda;
+
+        Call(String list, VariableDeclarationExpr element, LambdaExpr lambda) {
+            this.list = list;
+            this.element = element;
+            this.lambda = lambda;
+        }
+    }
+
+    @Override
+    public boolean matches(Node node) {
+        return node instanceof Statement && ((Statement) node).isExpressionStmt() &&
+                node.getParentNode().filter(p -> p instanceof BlockStmt).isPresent() &&
+                list(((Statement) node).asExpressionStmt().getExpression()).isPresent();
+    }
+
+    // the list in "list.forEach(s -> ...)" or "list.stream().forEach(s -> ...)"
+    private static Optional<NameExpr> list(Expression expression) {
+        if (!expression.isMethodCallExpr()) {
+            return Optional.empty();
+        }
+        MethodCallExpr call = expression.asMethodCallExpr();
+        if (!"forEach".equals(call.getNameAsString()) || call.getArguments().size() != 1 ||
+                !call.getArgument(0).isLambdaExpr() || call.getArgument(0).asLambdaExpr().getParameters().size() != 1 ||
+                !call.getScope().isPresent()) {
+            return Optional.empty();
+        }
+        Expression scope = call.getScope().get();
+        if (scope.isMethodCallExpr() && "stream".equals(scope.asMethodCallExpr().getNameAsString()) &&
+                scope.asMethodCallExpr().getArguments().isEmpty()) {
+            scope = scope.asMethodCallExpr().getScope().orElse(null);
+        }
+        return scope != null && scope.isNameExpr() ? Optional.of(scope.asNameExpr()) : Optional.empty();
+    }
+
+    @Override
+    public Optional<Call> check(Node node, RuleContext context) {
+        BlockStmt block = (BlockStmt) node.getParentNode().get();
+        MethodCallExpr call = ((Statement) node).asExpressionStmt().getExpression().asMethodCallExpr();
+        LambdaExpr lambda = call.getArgument(0).asLambdaExpr();
+        NameExpr list = list(call).get();
+
+        if (returns(lambda)) {
+            return Optional.empty();
+        }
+
+        Parameter parameter = lambda.getParameter(0);
+        Optional<Type> elementType = parameter.getType().isUnknownType() ?
+                elementType(list, context.getTypes()) : Optional.of(parameter.getType().clone());
+        if (!elementType.isPresent()) {
+            return Optional.empty();
+        }
+
+        if (!ArrayListAnalyzer.isLocalArrayList(list, lambda, block, context.getIndexes(), context.getTypes(),
+                context.getMetrics())) {
+            return Optional.empty();
+        }
+        if (!IndexedLoopRule.leavesListAlone(lambda, list.getNameAsString(), block, context) ||
+                IndexedLoopRule.isCold(node, profile, hotSamples, context)) {
+            return Optional.empty();
+        }
+
+        VariableDeclarationExpr element = new VariableDeclarationExpr(elementType.get(), parameter.getNameAsString());
+        element.setModifiers(parameter.getModifiers());
+        return Optional.of(new Call(list.getNameAsString(), element, lambda));
+    }
+
+    // a return of the lambda itself, not of a lambda or class inside it
+    private static boolean returns(LambdaExpr lambda) {
+        boolean[] returns = {false};
+        Traversal.preOrder(lambda.getBody(), (node, depth) -> {
+            if (!(node instanceof ReturnStmt)) {
+                return;
+            }
+            Node parent = node.getParentNode().orElse(null);
+            while (parent != lambda && !(parent instanceof LambdaExpr) && !(parent instanceof ObjectCreationExpr) &&
+                    !(parent instanceof LocalClassDeclarationStmt)) {
+                parent = parent.getParentNode().orElse(null);
+            }
+            if (parent == lambda) {
+                returns[0] = true;
+            }
+        });
+        return returns[0];
+    }
+
+    // "String" for "List<String> list = new ArrayList<>()", Object for a raw list, nothing for "List<? extends T>"
+    private static Optional<Type> elementType(NameExpr list, TypeResolutionCache types) {
+        ResolvedValueDeclaration declaration;
+        try {
+            declaration = types.resolveDeclaration(list);
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+        if (!(declaration instanceof JavaParserSymbolDeclaration) ||
+                !(((JavaParserSymbolDeclaration) declaration).getWrappedNode() instanceof VariableDeclarator)) {
+            return Optional.empty();
+        }
+        Type type = ((VariableDeclarator) ((JavaParserSymbolDeclaration) declaration).getWrappedNode()).getType();
+        if (!type.isClassOrInterfaceType()) {
+            return Optional.empty();
+        }
+        Optional<NodeList<Type>> arguments = type.asClassOrInterfaceType().getTypeArguments();
+        if (!arguments.isPresent()) {
+            return Optional.of(new ClassOrInterfaceType(null, "Object"));
+        }
+        if (arguments.get().size() != 1 || arguments.get().get(0).isWildcardType()) {
+            return Optional.empty();
+        }
+        return Optional.of(arguments.get().get(0).clone());
+    }
+
+    @Override
+    public void rewrite(Node node, Call call, RuleContext context) {
+        boolean stream = ((Statement) node).asExpressionStmt().getExpression().asMethodCallExpr().getScope()
+                .filter(Expression::isMethodCallExpr).isPresent();
+        IndexedLoopRule.rewritten(node, stream ? AnalysisMetrics.Shape.STREAM_FOR_EACH :
+                AnalysisMetrics.Shape.FOR_EACH_CALL, profile, context);
+
+        // "s -> lengths.add(s.length())" has an expression statement for a body
+        Statement lambdaBody = call.lambda.getBody();
+        List<Statement> body = new ArrayList<>();
+        for (Statement statement : lambdaBody.isBlockStmt() ? lambdaBody.asBlockStmt().getStatements() :
+                Collections.singletonList(lambdaBody)) {
+            body.add(statement.clone());
+        }
+        ForStmt forStmt = ArrayListAnalyzer.indexedLoop(node, call.list, call.element, body, context.getNames(),
+                hoistSize);
+
+        node.getComment().ifPresent(forStmt::setComment);
+        node.getRange().ifPresent(range -> forStmt.setData(ArrayListAnalyzer.REPLACED_RANGE, range));
+        BlockStmt block = (BlockStmt) node.getParentNode().get();
+        node.replace(forStmt);
+
+        // the call and the lambda are gone
+        context.changed(block);
+    }
+
+    @Override
+    public boolean isBottomUp() {
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.javassistmodel.JavassistFactory;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import javassist.ClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves types from a {@link ClasspathIndex}. Nothing is read until a type is asked for: class files are
+ * read from their jar and turned into declarations with javassist, and types from source roots are handed to a
+ * JavaParserTypeSolver for that root, which parses the file.
+ *
+ * Like every other type solver this caches what it resolved and isn't thread safe, so every thread has its
+ * own, all sharing one index.
+ */
+public class IndexedClasspathTypeSolver implements TypeSolver {
+
+    private final ClasspathIndex index;
+    private TypeSolver parent;
+
+    // supertypes are looked up by name when javassist needs them; JDK classes come from the running JVM
+    private final ClassPool classPool = new ClassPool(false);
+    // class files only; names that aren't on the classpath are cheap to look up again
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> resolved = new HashMap<>();
+    private final Map<Integer, JavaParserTypeSolver> sourceRoots = new HashMap<>();
+
+    public IndexedClasspathTypeSolver(ClasspathIndex index) {
+        this.index = index;
+        classPool.appendClassPath(new IndexClassPath());
+        classPool.appendSystemPath();
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        SymbolReference<ResolvedReferenceTypeDeclaration> reference = resolved.get(name);
+        if (reference != null) {
+            return reference;
+        }
+
+        ClasspathIndex.Location location = index.find(name);
+        if (location == null) {
+            // member types of source files aren't indexed, but their top level type is
+            return solveMemberOfSource(name);
+        }
+        if (location.isSource()) {
+            // not cached here: the declaration holds on to the whole parsed file, and the source root's solver
+            // keeps those only as long as there's memory to spare
+            return sourceRoot(location.element).tryToSolveType(name);
+        }
+
+        try {
+            CtClass ctClass = classPool.get(location.binaryName());
+            reference = SymbolReference.solved(JavassistFactory.toTypeDeclaration(ctClass, getRoot()));
+        } catch (NotFoundException e) {
+            reference = SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+        }
+        resolved.put(name, reference);
+        return reference;
+    }
+
+    private SymbolReference<ResolvedReferenceTypeDeclaration> solveMemberOfSource(String name) {
+        for (int dot = name.lastIndexOf('.'); dot > 0; dot = name.lastIndexOf('.', dot - 1)) {
+            ClasspathIndex.Location outer = index.find(name.substring(0, dot));
+            if (outer != null) {
+                return outer.isSource() ? sourceRoot(outer.element).tryToSolveType(name) :
+                        SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+            }
+        }
+        return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+    }
+
+    private JavaParserTypeSolver sourceRoot(int element) {
+        return sourceRoots.computeIfAbsent(element, e -> {
+            JavaParserTypeSolver solver = new JavaParserTypeSolver(index.getElement(e));
+            // so the types it finds resolve their own references through every solver, not just this root
+            solver.setParent(this);
+            return solver;
+        });
+    }
+
+    // lets javassist load supertypes and the like through the index, with dollars for member types
+    private class IndexClassPath implements ClassPath {
+
+        @Override
+        public InputStream openClassfile(String className) throws NotFoundException {
+            ClasspathIndex.Location location = index.find(className.replace('$', '.'));
+            if (location == null || location.isSource()) {
+                return null;
+            }
+            try {
+                return new ByteArrayInputStream(index.read(location));
+            } catch (IOException e) {
+                throw new NotFoundException(className, e);
+            }
+        }
+
+        @Override
+        public URL find(String className) {
+            ClasspathIndex.Location location = index.find(className.replace('$', '.'));
+            if (location == null || location.isSource()) {
+                return null;
+            }
+            try {
+                // javassist only checks whether there is one
+                return index.getElement(location.element).toUri().toURL();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.javaparser.Navigator;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resolves the types declared in the analyzed source roots from a {@link DeclarationIndex}: the stub of a top
+ * level type is parsed the first time it or one of its member types is asked for, and kept for the rest of the
+ * run, since stubs are small.
+ *
+ * Like every other type solver this caches what it resolved and isn't thread safe, so every thread has its
+ * own, all sharing one index.
+ */
+public class IndexedDeclarationTypeSolver implements TypeSolver {
+
+    private final DeclarationIndex index;
+    private TypeSolver parent;
+
+    private final JavaParser parser = new JavaParser();
+    // by top level type; empty if the index has none of that name
+    private final Map<String, Optional<CompilationUnit>> stubs = new HashMap<>();
+    // names that aren't in the index too, since the combined solver asks us about every JDK and library type
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> resolved = new HashMap<>();
+
+    public IndexedDeclarationTypeSolver(DeclarationIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        SymbolReference<ResolvedReferenceTypeDeclaration> reference = resolved.get(name);
+        if (reference == null) {
+            reference = solve(name);
+            resolved.put(name, reference);
+        }
+        return reference;
+    }
+
+    // "a.b.Outer.Inner" is "Outer.Inner" in the stub of "a.b.Outer"
+    private SymbolReference<ResolvedReferenceTypeDeclaration> solve(String name) {
+        for (int end = name.length(); end > 0; end = name.lastIndexOf('.', end - 1)) {
+            String topLevel = name.substring(0, end);
+            Optional<CompilationUnit> stub = stub(topLevel);
+            if (stub.isPresent()) {
+                Optional<TypeDeclaration<?>> type = Navigator.findType(stub.get(),
+                        topLevel.substring(topLevel.lastIndexOf('.') + 1) + name.substring(end));
+                return type.isPresent() ?
+                        SymbolReference.solved(JavaParserFacade.get(this).getTypeDeclaration(type.get())) :
+                        SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+            }
+        }
+        return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+    }
+
+    private Optional<CompilationUnit> stub(String topLevel) {
+        return stubs.computeIfAbsent(topLevel, n -> {
+            String text = index.find(n);
+            if (text == null) {
+                return Optional.empty();
+            }
+            index.parsed();
+            ParseResult<CompilationUnit> result = parser.parse(text);
+            return result.isSuccessful() ? result.getResult() : Optional.empty();
+        });
+    }
+}
@@ -0,0 +1,128 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+
+import java.util.Optional;
+
+/**
+ * The original rewrite: a for-each loop over a local ArrayList becomes an indexed loop. See
+ * {@link ArrayListAnalyzer#isLocalArrayList}, {@link ArrayListAnalyzer#callsModificationMethods} and
+ * {@link ArrayListAnalyzer#doReplace}.
+ *
+ * It runs bottom-up, so loops nested in a loop are rewritten before it, and calls other rules rewrote away
+ * (like the adds to a primitive list) don't stop it.
+ *
+ * Given an {@link ExecutionProfile}, it only rewrites loops in methods with enough samples, so a diff doesn't
+ * touch code that never runs long enough to matter.
+ */
+public class IndexedLoopRule implements RewriteRule<BlockStmt> {
+
+    private final boolean hoistSize;
+    private final ExecutionProfile profile;
+    private final long hotSamples;
+
+    /**
+     * @param hoistSize read the size of the list once, before the first iteration, instead of in every condition
+     */
+    public IndexedLoopRule(boolean hoistSize) {
+        this(hoistSize, null, 0);
+    }
+
+    /**
+     * @param profile where the program spends its time, or null to rewrite loops wherever they are
+     * @param hotSamples how many samples the method of a loop needs in the profile for the loop to be rewritten
+     */
+    public IndexedLoopRule(boolean hoistSize, ExecutionProfile profile, long hotSamples) {
+        this.hoistSize = hoistSize;
+        this.profile = profile;
+        this.hotSamples = hotSamples;
+    }
+
+    @Override
+    public boolean matches(Node node) {
+        return node instanceof ForEachStmt && node.getParentNode().filter(p -> p instanceof BlockStmt).isPresent();
+    }
+
+    // finds the block to replace the loop in
+    @Override
+    public Optional<BlockStmt> check(Node node, RuleContext context) {
+        BlockStmt block = (BlockStmt) node.getParentNode().get();
+
+        // Need to do a series of checks to prove that the replacement is safe:
+        // 1. the thing being looped over must be an array list
+        // 2. the array list must be locally-scoped
+        // 3. the value of the array list must *only* come from a call to the array list constructor
+        if (!ArrayListAnalyzer.isLocalArrayList(node, block, context.getIndexes(), context.getTypes(),
+                context.getMetrics())) {
+            return Optional.empty();
+        }
+
+        String list = ((ForEachStmt) node).getIterable().asNameExpr().getNameAsString();
+        if (!leavesListAlone(node, list, block, context) || isCold(node, profile, hotSamples, context)) {
+            return Optional.empty();
+        }
+        return Optional.of(block);
+    }
+
+    @Override
+    public void rewrite(Node node, BlockStmt block, RuleContext context) {
+        rewritten(node, AnalysisMetrics.Shape.FOR_EACH_LOOP, profile, context);
+        ArrayListAnalyzer.doReplace(block, node, context.getNames(), hoistSize);
+    }
+
+    /**
+     * The check after isLocalArrayList that every shape of loop shares: nothing in the loop may change the list.
+     *
+     * @param loop the loop, or the lambda that runs for every element
+     */
+    static boolean leavesListAlone(Node loop, String list, BlockStmt block, RuleContext context) {
+        // isLocalArrayList indexed the block, so this doesn't walk the loop again
+        DefUseIndex index = context.index(block);
+        if (index.covers(loop) ?
+                ArrayListAnalyzer.callsModificationMethods(loop, list, block, index, context.getTypes()) :
+                ArrayListAnalyzer.callsModificationMethods(loop)) {
+            context.getMetrics().reject(AnalysisMetrics.Rejection.CALLS_BANNED_METHOD, line(loop));
+            return false;
+        }
+
+        // the ones the name-only check used to turn down
+        if (index.covers(loop) && index.callsBannedMethod(loop)) {
+            context.getMetrics().otherReceiversOnly();
+        }
+        return true;
+    }
+
+    /**
+     * Whether the method of the loop doesn't have enough samples in the profile. Checked last, so "cold" only
+     * counts loops that would have been rewritten otherwise.
+     */
+    static boolean isCold(Node loop, ExecutionProfile profile, long hotSamples, RuleContext context) {
+        if (profile != null && profile.methodSamples(loop) < hotSamples) {
+            context.getMetrics().reject(AnalysisMetrics.Rejection.COLD, line(loop));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Counts a loop of the given shape as rewritten, with how hot it is if there's a profile.
+     */
+    static void rewritten(Node loop, AnalysisMetrics.Shape shape, ExecutionProfile profile, RuleContext context) {
+        context.getMetrics().rewritten(shape);
+        if (profile != null) {
+            context.getMetrics().profiledRewrite(ExecutionProfile.methodName(loop), line(loop),
+                    profile.methodSamples(loop), profile.lineSamples(loop));
+        }
+    }
+
+    private static int line(Node node) {
+        return node.getBegin().map(position -> position.line).orElse(-1);
+    }
+
+    @Override
+    public boolean isBottomUp() {
+        return true;
+    }
+}
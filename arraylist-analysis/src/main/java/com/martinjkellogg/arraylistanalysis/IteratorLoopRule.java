@@ -0,0 +1,242 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.WhileStmt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Rewrites loops over the iterator of a local ArrayList into indexed loops, so they don't allocate an iterator
+ * and check for concurrent modification on every element:
+ * <pre>
+ *     Iterator&lt;String&gt; it = list.iterator();      for (int i = 0; i &lt; list.size(); i += 1) {
+ *     while (it.hasNext()) {                          String s = list.get(i);
+ *         String s = it.next();                       ...
+ *         ...                                     }
+ *     }
+ * </pre>
+ * and the same with the iterator declared in a for loop, "for (Iterator&lt;String&gt; it = list.iterator();
+ * it.hasNext(); )". The list has to pass the checks of {@link IndexedLoopRule}. The iterator may only be used in
+ * the condition and in the declaration at the top of the body; it.remove(), a second it.next() or a use after
+ * the loop keep the loop as it is.
+ */
+class IteratorLoopRule implements RewriteRule<IteratorLoopRule.Loop> {
+
+    private final boolean hoistSize;
+    private final ExecutionProfile profile;
+    private final long hotSamples;
+
+    /**
+     * @see IndexedLoopRule#IndexedLoopRule(boolean, ExecutionProfile, long)
+     */
+    IteratorLoopRule(boolean hoistSize, ExecutionProfile profile, long hotSamples) {
+        this.hoistSize = hoistSize;
+        this.profile = profile;
+        this.hotSamples = hotSamples;
+    }
+
+    /**
+     * What check found: the pieces of the loop, and where it is.
+     */
+    static class Loop {
+        final BlockStmt block;
+        // the declaration of the iterator before the while loop, or null if the for loop declares it
+        final Statement declaration;
+        final Statement loop;
+        final String list;
+        final VariableDeclarationExpr element;
+        final BlockStmt body;
+
+        Loop(BlockStmt block, Statement declaration, Statement loop, String list, VariableDeclarationExpr element,
+             BlockStmt body) {
+            this.block = block;
+            this.declaration = declaration;
+            this.loop = loop;
+            this.list = list;
+            this.element = element;
+            this.body = body;
+        }
+    }
+
+    // the statement declaring the iterator for a while loop, or the for loop declaring its own
+    @Override
+    public boolean matches(Node node) {
+        if (!node.getParentNode().filter(p -> p instanceof BlockStmt).isPresent()) {
+            return false;
+        }
+        if (node instanceof ForStmt) {
+            ForStmt forStmt = (ForStmt) node;
+            return forStmt.getInitialization().size() == 1 &&
+                    iterator(forStmt.getInitialization().get(0)).isPresent() && forStmt.getUpdate().isEmpty();
+        }
+        return node instanceof Statement && ((Statement) node).isExpressionStmt() &&
+                iterator(((Statement) node).asExpressionStmt().getExpression()).isPresent();
+    }
+
+    // "Iterator<String> it = list.iterator()"
+    private static Optional<VariableDeclarator> iterator(Expression expression) {
+        if (!expression.isVariableDeclarationExpr() ||
+                expression.asVariableDeclarationExpr().getVariables().size() != 1) {
+            return Optional.empty();
+        }
+        VariableDeclarator declarator = expression.asVariableDeclarationExpr().getVariable(0);
+        if (!declarator.getType().isClassOrInterfaceType() ||
+                !"Iterator".equals(declarator.getType().asClassOrInterfaceType().getNameAsString())) {
+            return Optional.empty();
+        }
+        return declarator.getInitializer()
+                .filter(initializer -> initializer.isMethodCallExpr() &&
+                        "iterator".equals(initializer.asMethodCallExpr().getNameAsString()) &&
+                        initializer.asMethodCallExpr().getArguments().isEmpty() &&
+                        initializer.asMethodCallExpr().getScope().filter(Expression::isNameExpr).isPresent())
+                .map(initializer -> declarator);
+    }
+
+    @Override
+    public Optional<Loop> check(Node node, RuleContext context) {
+        BlockStmt block = (BlockStmt) node.getParentNode().get();
+
+        Statement declaration;
+        Statement loop;
+        Expression condition;
+        Statement loopBody;
+        VariableDeclarator iterator;
+        // where the iterator is in scope
+        List<Node> scope = new ArrayList<>();
+        if (node instanceof ForStmt) {
+            ForStmt forStmt = (ForStmt) node;
+            declaration = null;
+            loop = forStmt;
+            iterator = iterator(forStmt.getInitialization().get(0)).get();
+            condition = forStmt.getCompare().orElse(null);
+            loopBody = forStmt.getBody();
+            scope.add(forStmt);
+        } else {
+            NodeList<Statement> statements = block.getStatements();
+            int index = indexOf(statements, node);
+            if (index + 1 >= statements.size() || !statements.get(index + 1).isWhileStmt()) {
+                return Optional.empty();
+            }
+            WhileStmt whileStmt = statements.get(index + 1).asWhileStmt();
+            declaration = (Statement) node;
+            loop = whileStmt;
+            iterator = iterator(declaration.asExpressionStmt().getExpression()).get();
+            condition = whileStmt.getCondition();
+            loopBody = whileStmt.getBody();
+            scope.addAll(statements.subList(index + 1, statements.size()));
+        }
+
+        String name = iterator.getNameAsString();
+        if (!isCallOn(condition, name, "hasNext") || !loopBody.isBlockStmt()) {
+            return Optional.empty();
+        }
+        BlockStmt body = loopBody.asBlockStmt();
+        // "String s = it.next();"
+        if (body.getStatements().isEmpty() || !body.getStatement(0).isExpressionStmt()) {
+            return Optional.empty();
+        }
+        Expression first = body.getStatement(0).asExpressionStmt().getExpression();
+        if (!first.isVariableDeclarationExpr() || first.asVariableDeclarationExpr().getVariables().size() != 1 ||
+                !first.asVariableDeclarationExpr().getVariable(0).getInitializer()
+                        .filter(initializer -> isCallOn(initializer, name, "next")).isPresent()) {
+            return Optional.empty();
+        }
+        // hasNext() and next() and nothing else
+        if (uses(scope, name) != 2) {
+            return Optional.empty();
+        }
+
+        NameExpr list = iterator.getInitializer().get().asMethodCallExpr().getScope().get().asNameExpr();
+        if (!ArrayListAnalyzer.isLocalArrayList(list, loop, block, context.getIndexes(), context.getTypes(),
+                context.getMetrics())) {
+            return Optional.empty();
+        }
+        if (!IndexedLoopRule.leavesListAlone(loop, list.getNameAsString(), block, context) ||
+                IndexedLoopRule.isCold(loop, profile, hotSamples, context)) {
+            return Optional.empty();
+        }
+
+        VariableDeclarationExpr element = first.asVariableDeclarationExpr().clone();
+        element.getVariable(0).removeInitializer();
+        return Optional.of(new Loop(block, declaration, loop, list.getNameAsString(), element, body));
+    }
+
+    // "it.hasNext()"
+    private static boolean isCallOn(Expression expression, String name, String method) {
+        if (expression == null || !expression.isMethodCallExpr()) {
+            return false;
+        }
+        MethodCallExpr call = expression.asMethodCallExpr();
+        return method.equals(call.getNameAsString()) && call.getArguments().isEmpty() &&
+                call.getScope().filter(scope -> scope.isNameExpr() &&
+                        scope.asNameExpr().getNameAsString().equals(name)).isPresent();
+    }
+
+    private static int uses(List<Node> scope, String name) {
+        int[] uses = {0};
+        for (Node node : scope) {
+            Traversal.preOrder(node, (n, depth) -> {
+                if (n instanceof NameExpr && ((NameExpr) n).getNameAsString().equals(name)) {
+                    uses[0]++;
+                }
+            });
+        }
+        return uses[0];
+    }
+
+    // statements compare structurally, and the same loop may well be in a block twice
+    private static int indexOf(NodeList<Statement> statements, Node statement) {
+        for (int i = 0; i < statements.size(); i++) {
+            if (statements.get(i) == statement) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void rewrite(Node node, Loop loop, RuleContext context) {
+        IndexedLoopRule.rewritten(loop.loop, AnalysisMetrics.Shape.ITERATOR_LOOP, profile, context);
+
+        List<Statement> body = new ArrayList<>();
+        // without the declaration of the element, which indexedLoop puts back reading from the list
+        for (Statement statement : loop.body.getStatements().subList(1, loop.body.getStatements().size())) {
+            body.add(statement.clone());
+        }
+        ForStmt forStmt = ArrayListAnalyzer.indexedLoop(loop.loop, loop.list, loop.element, body,
+                context.getNames(), hoistSize);
+
+        // in place of both the declaration and the loop
+        Statement first = loop.declaration != null ? loop.declaration : loop.loop;
+        first.getComment().ifPresent(forStmt::setComment);
+        if (first.getBegin().isPresent() && loop.loop.getEnd().isPresent()) {
+            forStmt.setData(ArrayListAnalyzer.REPLACED_RANGE,
+                    new Range(first.getBegin().get(), loop.loop.getEnd().get()));
+        }
+        NodeList<Statement> statements = loop.block.getStatements();
+        if (loop.declaration != null) {
+            statements.remove(indexOf(statements, loop.loop));
+        }
+        statements.set(indexOf(statements, first), forStmt);
+
+        // the iterator and its calls are gone
+        context.changed(loop.block);
+    }
+
+    @Override
+    public boolean isBottomUp() {
+        return true;
+    }
+}
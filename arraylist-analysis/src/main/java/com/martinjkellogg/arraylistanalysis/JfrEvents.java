@@ -0,0 +1,160 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The Flight Recorder events of {@link AnalysisMetrics}. They only cost something while a recording with them
+ * enabled is running, e.g. {@code java -XX:StartFlightRecording=filename=run.jfr ...}.
+ *
+ * We build for Java 11, which has Flight Recorder, but it's a module of its own (jdk.jfr) that a runtime made
+ * with jlink may leave out. So nothing outside this class mentions jdk.jfr, and it's only used once
+ * {@link #isAvailable()} said so. Events are passed around as Object for the same reason. Reading recordings
+ * (see {@link ExecutionProfile}) is here for the same reason too.
+ */
+class JfrEvents {
+
+    private static final String CATEGORY = "ArrayList Analysis";
+
+    private static final boolean AVAILABLE = checkAvailable();
+
+    interface FrameVisitor {
+        /**
+         * @param type the binary name of the class, like "com.example.Outer$Inner"
+         * @param line the line number, or -1 if the recording doesn't have one
+         * @return whether to skip the rest of the stack trace
+         */
+        boolean visit(String type, String method, int line);
+    }
+
+    private JfrEvents() {
+    }
+
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    // not a JDK version check: the module may be missing from any runtime image
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    static Object beginPhase(String phase) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object event) {
+        ((Event) event).commit();
+    }
+
+    static void loopRejected(String reason, int line) {
+        LoopRejectedEvent event = new LoopRejectedEvent();
+        if (event.isEnabled()) {
+            event.reason = reason;
+            event.line = line;
+            event.commit();
+        }
+    }
+
+    static void fileAnalyzed(String file, long nanos, int replaced, String outcome) {
+        FileAnalyzedEvent event = new FileAnalyzedEvent();
+        if (event.isEnabled()) {
+            event.file = file;
+            event.analysisTime = nanos;
+            event.replaced = replaced;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads the execution samples of a recording, showing the visitor the Java frames of each one, innermost
+     * first. Events are read one at a time, so recordings of any size are fine.
+     *
+     * @return the number of samples
+     */
+    static long readExecutionSamples(Path recording, FrameVisitor visitor) throws IOException {
+        long samples = 0;
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                RecordedStackTrace stackTrace = event.getStackTrace();
+                if (!"jdk.ExecutionSample".equals(event.getEventType().getName()) || stackTrace == null) {
+                    continue;
+                }
+                samples++;
+                for (RecordedFrame frame : stackTrace.getFrames()) {
+                    if (!frame.isJavaFrame()) {
+                        continue;
+                    }
+                    RecordedMethod method = frame.getMethod();
+                    if (visitor.visit(method.getType().getName(), method.getName(), frame.getLineNumber())) {
+                        break;
+                    }
+                }
+            }
+        }
+        return samples;
+    }
+
+    @Name("com.martinjkellogg.arraylistanalysis.Phase")
+    @Label("Analysis Phase")
+    @Category(CATEGORY)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("com.martinjkellogg.arraylistanalysis.LoopRejected")
+    @Label("Loop Rejected")
+    @Description("A for-each loop that wasn't rewritten, and why")
+    @Category(CATEGORY)
+    static class LoopRejectedEvent extends Event {
+        @Label("Reason")
+        String reason;
+
+        @Label("Line")
+        int line;
+    }
+
+    @Name("com.martinjkellogg.arraylistanalysis.FileAnalyzed")
+    @Label("File Analyzed")
+    @Category(CATEGORY)
+    static class FileAnalyzedEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Analysis Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long analysisTime;
+
+        @Label("Replaced")
+        int replaced;
+
+        @Label("Outcome")
+        String outcome;
+    }
+}
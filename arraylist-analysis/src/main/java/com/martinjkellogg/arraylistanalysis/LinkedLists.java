@@ -0,0 +1,286 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.resolution.types.ResolvedType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Replaces local LinkedLists with an ArrayList, or an ArrayDeque when they're used as a queue or stack, so adding
+ * doesn't allocate a node per element and reading doesn't chase pointers:
+ * <pre>
+ *     List&lt;String&gt; list = new LinkedList&lt;&gt;();          List&lt;String&gt; list = new ArrayList&lt;&gt;();
+ *     Deque&lt;Task&gt; stack = new LinkedList&lt;&gt;();          Deque&lt;Task&gt; stack = new ArrayDeque&lt;&gt;();
+ * </pre>
+ * Loops over a list that became an ArrayList are then rewritten like any other, in the same walk.
+ *
+ * The variable has to pass the locality checks isLocalArrayList makes (it's not aliased, and doesn't show up
+ * anywhere it could be handed on), and every method called on it has to be one the replacement does at least as
+ * fast:
+ * <ul>
+ *     <li>an ArrayList for a List, Collection or Iterable that's only appended to, read, iterated or sorted. An
+ *     insert or remove at an index is cheap on a LinkedList near the head and never on an ArrayList, so those keep
+ *     it;</li>
+ *     <li>an ArrayDeque for a Queue or Deque that's only added to and taken from at either end, or iterated. An
+ *     ArrayDeque doesn't allow null elements, so everything added has to be a value that can't be null (a
+ *     primitive, a literal, a new object or a string concatenation).</li>
+ * </ul>
+ * Neither may be passed to a method, even one that only reads it: a parameter declared as a LinkedList wouldn't
+ * take the replacement, an instanceof check of it would come out the other way, and an ArrayDeque doesn't
+ * compare by its elements.
+ * Iterating means a for-each loop or forEach, never an iterator: removing through one is what a LinkedList is
+ * good at, and costs a copy of the rest of an ArrayList or ArrayDeque every time.
+ *
+ * A variable declared as a LinkedList gets the declared type of its replacement as well, so it can only be used
+ * like one.
+ */
+class LinkedLists implements RewriteRule<LinkedLists.Replacement> {
+
+    // what the declared type may be, by replacement. The created type is a java.util.LinkedList, so these simple
+    // names can't be some other class.
+    private static final Set<String> LIST_TYPES = new HashSet<>(Arrays.asList("List", "Collection", "Iterable"));
+    private static final Set<String> QUEUE_TYPES = new HashSet<>(Arrays.asList("Queue", "Deque"));
+
+    // what an ArrayList does as well as a LinkedList, or better, with the argument counts that mean that
+    private static final Set<String> LIST_METHODS = new HashSet<>(Arrays.asList(
+            "add/1", "addAll/1", "get/1", "set/2", "size/0", "isEmpty/0", "contains/1", "containsAll/1", "indexOf/1",
+            "lastIndexOf/1", "forEach/1", "stream/0", "toArray/0", "toArray/1", "sort/1",
+            "replaceAll/1", "removeIf/1", "clear/0", "equals/1", "hashCode/0", "toString/0"));
+
+    // what an ArrayDeque does as well as a LinkedList. Not equals or hashCode, which an ArrayDeque doesn't override.
+    private static final Set<String> QUEUE_METHODS = new HashSet<>(Arrays.asList(
+            "add/1", "addFirst/1", "addLast/1", "offer/1", "offerFirst/1", "offerLast/1", "push/1", "pop/0",
+            "poll/0", "pollFirst/0", "pollLast/0", "peek/0", "peekFirst/0", "peekLast/0", "element/0", "remove/0",
+            "removeFirst/0", "removeLast/0", "getFirst/0", "getLast/0", "size/0", "isEmpty/0", "contains/1",
+            "forEach/1", "stream/0", "toArray/0", "toArray/1", "clear/0", "toString/0"));
+
+    // the ones that put their argument in the deque
+    private static final Set<String> QUEUE_INSERTS = new HashSet<>(Arrays.asList(
+            "add", "addFirst", "addLast", "offer", "offerFirst", "offerLast", "push"));
+
+    /**
+     * What check found: the class to create instead, and whether the declared type changes with it.
+     */
+    static class Replacement {
+        final String type;
+        final boolean declaredType;
+
+        Replacement(String type, boolean declaredType) {
+            this.type = type;
+            this.declaredType = declaredType;
+        }
+    }
+
+    @Override
+    public boolean matches(Node node) {
+        if (!(node instanceof ExpressionStmt) || !((ExpressionStmt) node).getExpression().isVariableDeclarationExpr() ||
+                !node.getParentNode().filter(p -> p instanceof BlockStmt).isPresent()) {
+            return false;
+        }
+        NodeList<VariableDeclarator> variables =
+                ((ExpressionStmt) node).getExpression().asVariableDeclarationExpr().getVariables();
+        if (variables.size() != 1 || !variables.get(0).getType().isClassOrInterfaceType() ||
+                !variables.get(0).getInitializer().filter(Expression::isObjectCreationExpr).isPresent()) {
+            return false;
+        }
+        ObjectCreationExpr creation = variables.get(0).getInitializer().get().asObjectCreationExpr();
+        return "LinkedList".equals(creation.getType().getNameAsString()) && creation.getArguments().size() <= 1 &&
+                !creation.getAnonymousClassBody().isPresent();
+    }
+
+    @Override
+    public Optional<Replacement> check(Node node, RuleContext context) {
+        VariableDeclarator declarator =
+                ((ExpressionStmt) node).getExpression().asVariableDeclarationExpr().getVariable(0);
+        ObjectCreationExpr creation = declarator.getInitializer().get().asObjectCreationExpr();
+        String name = declarator.getNameAsString();
+        BlockStmt block = (BlockStmt) node.getParentNode().get();
+        TypeResolutionCache types = context.getTypes();
+
+        // "LinkedList" might be some other class of that name
+        try {
+            ResolvedType created = types.calculateResolvedType(creation);
+            if (!created.isReferenceType() ||
+                    !"java.util.LinkedList".equals(created.asReferenceType().getQualifiedName())) {
+                return Optional.empty();
+            }
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+
+        // the same checks isLocalArrayList makes of a list, but the block is the one the list is declared in
+        DefUseIndex index = context.index(block);
+        if (index.isAliased(block, name) || index.hasOtherUses(block, name)) {
+            return Optional.empty();
+        }
+
+        // every use is a call on the list or a loop over it
+        List<MethodCallExpr> calls = new ArrayList<>();
+        NodeList<Statement> statements = block.getStatements();
+        for (Statement statement : statements.subList(indexOf(statements, node) + 1, statements.size())) {
+            List<NameExpr> uses = new ArrayList<>();
+            boolean[] shadowed = {false};
+            Traversal.preOrder(statement, (n, depth) -> {
+                if (n instanceof NameExpr && ((NameExpr) n).getNameAsString().equals(name)) {
+                    uses.add((NameExpr) n);
+                } else if (n instanceof VariableDeclarator && ((VariableDeclarator) n).getNameAsString().equals(name) ||
+                        n instanceof Parameter && ((Parameter) n).getNameAsString().equals(name)) {
+                    // a field or parameter of a nested class could shadow the variable
+                    shadowed[0] = true;
+                }
+            });
+            if (shadowed[0]) {
+                return Optional.empty();
+            }
+            for (NameExpr use : uses) {
+                Node parent = use.getParentNode().orElse(null);
+                if (parent instanceof ForEachStmt && ((ForEachStmt) parent).getIterable() == use) {
+                    continue;
+                }
+                if (!(parent instanceof MethodCallExpr)) {
+                    return Optional.empty();
+                }
+                MethodCallExpr call = (MethodCallExpr) parent;
+                if (call.getScope().orElse(null) != use) {
+                    return Optional.empty();
+                }
+                calls.add(call);
+            }
+        }
+
+        String declared = declarator.getType().asClassOrInterfaceType().getNameAsString();
+        boolean linkedList = "LinkedList".equals(declared);
+        if ((linkedList || LIST_TYPES.contains(declared)) &&
+                calls.stream().allMatch(call -> LIST_METHODS.contains(signature(call)))) {
+            return Optional.of(new Replacement("ArrayList", linkedList));
+        }
+        if ((linkedList || QUEUE_TYPES.contains(declared)) && creation.getArguments().isEmpty() &&
+                calls.stream().allMatch(call -> QUEUE_METHODS.contains(signature(call)) &&
+                        (!QUEUE_INSERTS.contains(call.getNameAsString()) || isNeverNull(call.getArgument(0), types)))) {
+            return Optional.of(new Replacement("ArrayDeque", linkedList));
+        }
+        return Optional.empty();
+    }
+
+    // "add/1"
+    private static String signature(MethodCallExpr call) {
+        return call.getNameAsString() + "/" + call.getArguments().size();
+    }
+
+    // a value an ArrayDeque takes
+    private static boolean isNeverNull(Expression value, TypeResolutionCache types) {
+        if (value.isEnclosedExpr()) {
+            return isNeverNull(value.asEnclosedExpr().getInner(), types);
+        }
+        if (value.isLiteralExpr()) {
+            return !value.isNullLiteralExpr();
+        }
+        if (value.isObjectCreationExpr() || value.isArrayCreationExpr()) {
+            return true;
+        }
+        try {
+            ResolvedType type = types.calculateResolvedType(value);
+            // boxed, or "a" + b
+            return type.isPrimitive() ||
+                    value.isBinaryExpr() && value.asBinaryExpr().getOperator() == BinaryExpr.Operator.PLUS &&
+                    type.isReferenceType() && "java.lang.String".equals(type.asReferenceType().getQualifiedName());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // statements compare structurally, and the same one may well be in a block twice
+    private static int indexOf(NodeList<Statement> statements, Node statement) {
+        for (int i = 0; i < statements.size(); i++) {
+            if (statements.get(i) == statement) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void rewrite(Node node, Replacement replacement, RuleContext context) {
+        VariableDeclarator declarator =
+                ((ExpressionStmt) node).getExpression().asVariableDeclarationExpr().getVariable(0);
+        String type = qualify(node, replacement.type);
+
+        ObjectCreationExpr creation = declarator.getInitializer().get().asObjectCreationExpr();
+        ObjectCreationExpr replaced = creation.clone();
+        replaced.setType(withName(creation.getType(), type));
+        replace(creation, replaced);
+
+        if (replacement.declaredType) {
+            ClassOrInterfaceType declared = declarator.getType().asClassOrInterfaceType();
+            replace(declared, withName(declared, type));
+        }
+
+        // the block has a new ArrayList now
+        context.changed(node);
+    }
+
+    // "ArrayList<String>" for "LinkedList<String>"
+    private static ClassOrInterfaceType withName(ClassOrInterfaceType type, String name) {
+        ClassOrInterfaceType renamed = null;
+        for (String part : name.split("\\.")) {
+            renamed = new ClassOrInterfaceType(renamed, part);
+        }
+        // an empty list for the diamond
+        if (type.getTypeArguments().isPresent()) {
+            NodeList<Type> arguments = new NodeList<>();
+            type.getTypeArguments().get().forEach(argument -> arguments.add(argument.clone()));
+            renamed.setTypeArguments(arguments);
+        }
+        return renamed;
+    }
+
+    private static void replace(Node original, Node replacement) {
+        // for the PreservingPrinter
+        original.getRange().ifPresent(range -> replacement.setData(ArrayListAnalyzer.REPLACED_RANGE, range));
+        original.replace(replacement);
+    }
+
+    // the simple name if the file imports it, e.g. with java.util.*, and the qualified one if not
+    private static String qualify(Node node, String simpleName) {
+        Optional<CompilationUnit> cu = node.findCompilationUnit();
+        if (!cu.isPresent()) {
+            return "java.util." + simpleName;
+        }
+        boolean imported = false;
+        for (ImportDeclaration importDeclaration : cu.get().getImports()) {
+            if (importDeclaration.isStatic()) {
+                continue;
+            }
+            String imports = importDeclaration.getNameAsString();
+            if (importDeclaration.isAsterisk() ? "java.util".equals(imports) :
+                    ("java.util." + simpleName).equals(imports)) {
+                imported = true;
+            } else if (!importDeclaration.isAsterisk() && imports.endsWith("." + simpleName)) {
+                // some other class of that name
+                return "java.util." + simpleName;
+            }
+        }
+        return imported ? simpleName : "java.util." + simpleName;
+    }
+}
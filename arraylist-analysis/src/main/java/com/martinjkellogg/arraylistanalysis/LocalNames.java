@@ -0,0 +1,65 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.expr.SimpleName;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Picks names for the variables doReplace introduces. A name is the first of "base", "base1", "base2", ... that
+ * isn't used anywhere in the enclosing method (or initializer), so it can neither shadow nor be shadowed by
+ * anything the loop refers to, and the same input always gets the same names.
+ *
+ * The names used in a method are collected the first time we need a name in it; names handed out later are
+ * added to that set, so two loops in the same method never get the same name.
+ */
+class LocalNames {
+
+    // by identity, two methods that look the same are still different scopes
+    private final Map<Node, Set<String>> used = new IdentityHashMap<>();
+
+    /**
+     * A fresh name for a variable declared at the given node.
+     */
+    String fresh(Node node, String base) {
+        Set<String> names = used.computeIfAbsent(scope(node), LocalNames::namesIn);
+
+        String name = base;
+        for (int i = 1; names.contains(name); i++) {
+            name = base + i;
+        }
+        names.add(name);
+        return name;
+    }
+
+    private static Node scope(Node node) {
+        Node scope = node;
+        while (!(scope instanceof CallableDeclaration || scope instanceof InitializerDeclaration ||
+                scope instanceof FieldDeclaration)) {
+            Optional<Node> parent = scope.getParentNode();
+            if (!parent.isPresent()) {
+                // a detached statement, the whole thing is the scope
+                return scope;
+            }
+            scope = parent.get();
+        }
+        return scope;
+    }
+
+    // every identifier, not just variables: a loop index called like a field, type or method is legal but
+    // confusing to read
+    private static Set<String> namesIn(Node scope) {
+        Set<String> names = new HashSet<>();
+        for (SimpleName name : scope.findAll(SimpleName.class)) {
+            names.add(name.getIdentifier());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,252 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.InstanceOfExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.LocalClassDeclarationStmt;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * What methods do with the lists passed to them, so a loop over a list that's handed to a helper which only reads
+ * it can still be rewritten.
+ *
+ * Every parameter of a method gets an {@link Effect}, worked out from its uses in the body, following the calls
+ * it's passed on to. The summary of a method is computed the first time a call to it is checked and kept on its
+ * declaration, so it's computed once per method and file. Only methods in the same file as the call are
+ * summarized: the result cache only hashes the file itself, so its result mustn't depend on code in another one.
+ * Those methods also have to be static, private or final (or in a final class), since an override could do
+ * anything. A few JDK methods are known to only read their arguments; everything else is assumed to let the list
+ * escape.
+ */
+class MethodSummaries {
+
+    /**
+     * What a method may do with an argument, from harmless to hopeless.
+     */
+    enum Effect {
+        /** Only reads it while the method runs. */
+        READS,
+        /** Adds or removes elements, but doesn't keep it. */
+        MUTATES,
+        /** Keeps it, returns it, or does something with it we don't understand. */
+        ESCAPES;
+
+        Effect or(Effect other) {
+            return compareTo(other) >= 0 ? this : other;
+        }
+    }
+
+    private static final DataKey<Effect[]> SUMMARY = new DataKey<Effect[]>() {
+    };
+
+    // the calls on a list that don't change it or let it out. iterator() and subList() would.
+    private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList(
+            "get", "size", "isEmpty", "contains", "containsAll", "indexOf", "lastIndexOf", "equals", "hashCode",
+            "toString", "toArray", "stream"));
+
+    // JDK methods that only call toString, equals or hashCode on an argument
+    private static final Set<String> READ_ONLY_JDK_METHODS = new HashSet<>(Arrays.asList(
+            "java.io.PrintStream.print", "java.io.PrintStream.println", "java.lang.String.valueOf",
+            "java.lang.StringBuilder.append", "java.util.Objects.equals", "java.util.Objects.hashCode",
+            "java.util.Objects.toString"));
+
+    private MethodSummaries() {
+    }
+
+    /**
+     * Whether every call in the block that the variable is passed to leaves it alone while the loop runs: the
+     * callee only reads it, or only changes it from outside the loop.
+     */
+    static boolean isOnlyReadBy(BlockStmt block, String name, Node loop, TypeResolutionCache types) {
+        boolean[] safe = {true};
+        // the index only says there's such a call somewhere in the block; the tree has the calls themselves
+        Traversal.preOrder(block, (node, depth) -> {
+            if (!safe[0] || !(node instanceof MethodCallExpr)) {
+                return;
+            }
+            MethodCallExpr call = (MethodCallExpr) node;
+            NodeList<Expression> arguments = call.getArguments();
+            for (int i = 0; i < arguments.size(); i++) {
+                Expression argument = arguments.get(i);
+                if (!argument.isNameExpr() || !argument.asNameExpr().getNameAsString().equals(name)) {
+                    continue;
+                }
+                Effect effect = effectOn(call, i, types);
+                if (effect == Effect.ESCAPES || effect == Effect.MUTATES && isInside(call, loop)) {
+                    safe[0] = false;
+                }
+            }
+        });
+        return safe[0];
+    }
+
+    private static boolean isInside(Node node, Node ancestor) {
+        for (Node n = node; n != null; n = n.getParentNode().orElse(null)) {
+            if (n == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * What the call does with its argument at the given index.
+     */
+    static Effect effectOn(MethodCallExpr call, int argument, TypeResolutionCache types) {
+        return effectOn(call, argument, null, -1, types);
+    }
+
+    /**
+     * @param summarizing the method whose parameter we're summarizing, if the call is in its body
+     */
+    private static Effect effectOn(MethodCallExpr call, int argument, MethodDeclaration summarizing, int parameter,
+                                   TypeResolutionCache types) {
+        ResolvedMethodDeclaration method;
+        try {
+            method = types.resolveMethod(call);
+        } catch (RuntimeException e) {
+            // can't tell which method it is, so it could be any
+            return Effect.ESCAPES;
+        }
+        // "String... args" packs it into an array
+        if (method.hasVariadicParameter() && argument >= method.getNumberOfParams() - 1) {
+            return Effect.ESCAPES;
+        }
+        if (READ_ONLY_JDK_METHODS.contains(method.getQualifiedName())) {
+            return Effect.READS;
+        }
+
+        Optional<MethodDeclaration> declaration = method.toAst();
+        if (!declaration.isPresent() || !isSameFile(declaration.get(), call) || isOverridable(declaration.get())) {
+            return Effect.ESCAPES;
+        }
+        if (declaration.get() == summarizing && argument == parameter) {
+            // recursion that passes it on as is: the rest of the body says what happens to it
+            return Effect.READS;
+        }
+        return summarize(declaration.get(), types)[argument];
+    }
+
+    private static boolean isSameFile(Node a, Node b) {
+        Optional<CompilationUnit> cu = a.findCompilationUnit();
+        return cu.isPresent() && cu.get() == b.findCompilationUnit().orElse(null);
+    }
+
+    private static boolean isOverridable(MethodDeclaration method) {
+        if (method.isStatic() || method.isPrivate() || method.isFinal()) {
+            return false;
+        }
+        // anonymous classes can't be extended either, but they're not worth the trouble. Enums can, by constants
+        // with a body.
+        Node type = method.getParentNode().orElse(null);
+        return !(type instanceof ClassOrInterfaceDeclaration && ((ClassOrInterfaceDeclaration) type).isFinal());
+    }
+
+    /**
+     * The effect of the method on each of its parameters, computed on first use.
+     */
+    static Effect[] summarize(MethodDeclaration method, TypeResolutionCache types) {
+        if (method.containsData(SUMMARY)) {
+            return method.getData(SUMMARY);
+        }
+
+        NodeList<Parameter> parameters = method.getParameters();
+        Effect[] effects = new Effect[parameters.size()];
+        // a recursive call sees the worst case rather than a summary that isn't done yet
+        Arrays.fill(effects, Effect.ESCAPES);
+        method.setData(SUMMARY, effects);
+
+        Effect[] summary = new Effect[parameters.size()];
+        for (int i = 0; i < summary.length; i++) {
+            Parameter parameter = parameters.get(i);
+            summary[i] = !method.getBody().isPresent() || parameter.isVarArgs() ? Effect.ESCAPES :
+                    effectOnParameter(method, i, types);
+        }
+        method.setData(SUMMARY, summary);
+        return summary;
+    }
+
+    private static Effect effectOnParameter(MethodDeclaration method, int parameter, TypeResolutionCache types) {
+        BlockStmt body = method.getBody().get();
+        String name = method.getParameter(parameter).getNameAsString();
+        Effect[] effect = {Effect.READS};
+        Traversal.preOrder(body, (node, depth) -> {
+            // locals can't shadow parameters, so every use of the name is the parameter, or a field of a local
+            // or anonymous class, which only makes us more careful
+            if (effect[0] != Effect.ESCAPES && node instanceof NameExpr &&
+                    ((NameExpr) node).getNameAsString().equals(name)) {
+                effect[0] = effect[0].or(effectOfUse((NameExpr) node, method, parameter, types));
+            }
+        });
+        return effect[0];
+    }
+
+    private static Effect effectOfUse(NameExpr use, MethodDeclaration method, int parameter,
+                                      TypeResolutionCache types) {
+        Node parent = use.getParentNode().orElse(null);
+        Effect effect;
+        if (parent instanceof MethodCallExpr) {
+            MethodCallExpr call = (MethodCallExpr) parent;
+            if (call.getScope().filter(scope -> scope == use).isPresent()) {
+                String called = call.getNameAsString();
+                effect = READ_METHODS.contains(called) ? Effect.READS :
+                        ArrayListAnalyzer.isBannedMethod(called) ? Effect.MUTATES : Effect.ESCAPES;
+            } else {
+                effect = effectOn(call, indexOf(call.getArguments(), use), method, parameter, types);
+            }
+        } else if (parent instanceof ForEachStmt && ((ForEachStmt) parent).getIterable() == use ||
+                parent instanceof InstanceOfExpr) {
+            effect = Effect.READS;
+        } else if (parent instanceof BinaryExpr) {
+            // ==, != or string concatenation, nothing else compiles with a list
+            effect = Effect.READS;
+        } else {
+            // assigned, returned, stored, ...
+            return Effect.ESCAPES;
+        }
+
+        // a lambda or local class may run whenever, including while the caller's loop does
+        if (effect == Effect.MUTATES && isDeferred(use, method.getBody().get())) {
+            return Effect.ESCAPES;
+        }
+        return effect;
+    }
+
+    private static boolean isDeferred(Node node, BlockStmt body) {
+        for (Node n = node; n != body && n != null; n = n.getParentNode().orElse(null)) {
+            if (n instanceof LambdaExpr || n instanceof LocalClassDeclarationStmt ||
+                    n instanceof ObjectCreationExpr && ((ObjectCreationExpr) n).getAnonymousClassBody().isPresent()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // by identity: "f(list, list)" has two equal arguments
+    private static int indexOf(NodeList<Expression> arguments, Expression argument) {
+        for (int i = 0; i < arguments.size(); i++) {
+            if (arguments.get(i) == argument) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(argument + " is not an argument");
+    }
+}
@@ -0,0 +1,134 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.printer.PrettyPrinter;
+import com.github.javaparser.printer.PrettyPrinterConfiguration;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Prints a rewritten compilation unit by copying the original source and only pretty printing the nodes that
+ * were replaced, so everything else keeps its formatting byte for byte.
+ *
+ * JavaParser's LexicalPreservingPrinter does the same in general, but it has to be set up before the tree
+ * changes, which costs about as much as parsing, and in the version we use it loses track of the other loops
+ * in a block once one of them is replaced. Our rewrites only ever replace whole nodes, and remember the range
+ * of the node they replaced (see {@link ArrayListAnalyzer#REPLACED_RANGE}), so splicing is all we need. When
+ * one statement was replaced by several, they all have its range and are printed one per line in its place.
+ */
+class PreservingPrinter {
+
+    private PreservingPrinter() {
+    }
+
+    /**
+     * @param source the text the compilation unit was parsed from
+     */
+    static String print(CompilationUnit cu, String source) {
+        // in tree order, which the sort keeps for nodes that replaced the same statement
+        List<Node> replacements = cu.findAll(Node.class,
+                node -> node.containsData(ArrayListAnalyzer.REPLACED_RANGE) && !isInsideReplacement(node));
+        replacements.sort(Comparator.comparing(node -> node.getData(ArrayListAnalyzer.REPLACED_RANGE).begin));
+
+        int[] lineStarts = lineStarts(source);
+        String lineSeparator = lineSeparator(source);
+
+        StringBuilder sb = new StringBuilder(source.length() + 256 * replacements.size());
+        int copied = 0;
+        Range previous = null;
+        for (Node replacement : replacements) {
+            Range range = replacement.getData(ArrayListAnalyzer.REPLACED_RANGE);
+            String indentation = indentation(source, lineStarts[range.begin.line - 1]);
+            if (range.equals(previous)) {
+                sb.append(lineSeparator).append(indentation);
+                sb.append(print(replacement, indentation, lineSeparator));
+                continue;
+            }
+
+            int begin = offset(lineStarts, range.begin);
+            // ranges include their last character
+            int end = offset(lineStarts, range.end) + 1;
+            if (begin < copied || end > source.length()) {
+                // the ranges don't match the text (a tab size other than 1, say); better ugly than broken
+                return new PrettyPrinter().print(cu);
+            }
+
+            sb.append(source, copied, begin);
+            sb.append(print(replacement, indentation, lineSeparator));
+            copied = end;
+            previous = range;
+        }
+        sb.append(source, copied, source.length());
+
+        return sb.toString();
+    }
+
+    // replacements inside a replacement (a nested loop, a list.size() in a rewritten loop, ...) are printed with it
+    private static boolean isInsideReplacement(Node node) {
+        Optional<Node> parent = node.getParentNode();
+        while (parent.isPresent()) {
+            if (parent.get().containsData(ArrayListAnalyzer.REPLACED_RANGE)) {
+                return true;
+            }
+            parent = parent.get().getParentNode();
+        }
+        return false;
+    }
+
+    private static String print(Node node, String indentation, String lineSeparator) {
+        PrettyPrinterConfiguration configuration =
+                new PrettyPrinterConfiguration().setEndOfLineCharacter(lineSeparator);
+
+        // the node's own comment is still in the source in front of it, but comments inside it are part of the range
+        Optional<Comment> comment = node.getComment();
+        node.removeComment();
+        String printed = new PrettyPrinter(configuration).print(node);
+        comment.ifPresent(node::setComment);
+
+        // the printer starts at column 0; the first line goes where the old node started, the rest gets its indentation
+        return printed.replace(lineSeparator, lineSeparator + indentation);
+    }
+
+    private static int[] lineStarts(String source) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\r' && i + 1 < source.length() && source.charAt(i + 1) == '\n') {
+                i++;
+                starts.add(i + 1);
+            } else if (c == '\r' || c == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        return starts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int offset(int[] lineStarts, Position position) {
+        // lines and columns are 1-based
+        return lineStarts[position.line - 1] + position.column - 1;
+    }
+
+    private static String indentation(String source, int lineStart) {
+        int i = lineStart;
+        while (i < source.length() && (source.charAt(i) == ' ' || source.charAt(i) == '\t')) {
+            i++;
+        }
+        return source.substring(lineStart, i);
+    }
+
+    private static String lineSeparator(String source) {
+        int newline = source.indexOf('\n');
+        if (newline > 0 && source.charAt(newline - 1) == '\r') {
+            return "\r\n";
+        }
+        return newline >= 0 || source.indexOf('\r') < 0 ? "\n" : "\r";
+    }
+}
@@ -0,0 +1,358 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.DoStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.LocalClassDeclarationStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.WhileStmt;
+import com.github.javaparser.resolution.types.ResolvedType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Gives "new ArrayList&lt;&gt;()" an initial capacity when there's a bound on how many elements get added to the
+ * list, so it's allocated once at the right size instead of growing (and copying) its array:
+ * <pre>
+ *     List&lt;String&gt; list = new ArrayList&lt;&gt;();   // becomes new ArrayList&lt;&gt;(names.size() + 2)
+ *     list.add(first);
+ *     for (String name : names) {
+ *         if (!name.isEmpty()) list.add(name);
+ *     }
+ *     list.add(last);
+ * </pre>
+ * The bound counts every add in the rest of the block: one for an add in straight-line code or under an if, and
+ * the size of the collection (or length of the array) for one in the body of a for-each loop over it, or of an
+ * indexed loop up to its size. Anything that could add elements in ways we can't count (an addAll, an add in
+ * another kind of loop or in a lambda, passing the list to a method that may change it, an alias) leaves the
+ * list as it is. Returning it is fine: what the caller adds later doesn't have to fit.
+ *
+ * A size can only be read where the list is created if that's as good as reading it where the loop starts: only
+ * the first loop of the block may have one, and everything before it has to be adds of constants or variables.
+ * The capacity doesn't change what the code does either way, only how much it allocates.
+ */
+class PresizedLists implements RewriteRule<Expression> {
+
+    // what new ArrayList<>() grows to on the first add; asking for that up front saves nothing
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private static final Set<UnaryExpr.Operator> INCREMENTS = EnumSet.of(UnaryExpr.Operator.PREFIX_INCREMENT,
+            UnaryExpr.Operator.PREFIX_DECREMENT, UnaryExpr.Operator.POSTFIX_INCREMENT,
+            UnaryExpr.Operator.POSTFIX_DECREMENT);
+
+    // the calls on a list that never make it longer. listIterator() and subList() can.
+    private static final Set<String> NON_GROWING_METHODS = new HashSet<>(Arrays.asList(
+            "get", "size", "isEmpty", "contains", "containsAll", "indexOf", "lastIndexOf", "equals", "hashCode",
+            "toString", "toArray", "stream", "iterator", "forEach", "set", "sort", "replaceAll", "remove",
+            "removeAll", "removeIf", "retainAll", "clear", "trimToSize"));
+
+    // the declaration statement, before the loop rules take the adds and loops apart
+    @Override
+    public boolean matches(Node node) {
+        if (!(node instanceof ExpressionStmt) || !((ExpressionStmt) node).getExpression().isVariableDeclarationExpr() ||
+                !node.getParentNode().filter(p -> p instanceof BlockStmt).isPresent()) {
+            return false;
+        }
+        NodeList<VariableDeclarator> variables =
+                ((ExpressionStmt) node).getExpression().asVariableDeclarationExpr().getVariables();
+        if (variables.size() != 1 ||
+                !variables.get(0).getInitializer().filter(Expression::isObjectCreationExpr).isPresent()) {
+            return false;
+        }
+        ObjectCreationExpr creation = variables.get(0).getInitializer().get().asObjectCreationExpr();
+        return "ArrayList".equals(creation.getType().getNameAsString()) && creation.getArguments().isEmpty() &&
+                !creation.getAnonymousClassBody().isPresent();
+    }
+
+    // finds the capacity
+    @Override
+    public Optional<Expression> check(Node node, RuleContext context) {
+        VariableDeclarator declarator =
+                ((ExpressionStmt) node).getExpression().asVariableDeclarationExpr().getVariable(0);
+        String name = declarator.getNameAsString();
+        BlockStmt block = (BlockStmt) node.getParentNode().get();
+        TypeResolutionCache types = context.getTypes();
+
+        // "ArrayList" might be some other class of that name
+        try {
+            ResolvedType created = types.calculateResolvedType(declarator.getInitializer().get());
+            if (!created.isReferenceType() ||
+                    !"java.util.ArrayList".equals(created.asReferenceType().getQualifiedName())) {
+                return Optional.empty();
+            }
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+
+        // the variable is in scope from its declaration to the end of the block
+        NodeList<Statement> statements = block.getStatements();
+        int declaration = indexOf(statements, node);
+        Bound bound = new Bound();
+        boolean onlyAddsSoFar = true;
+        for (Statement statement : statements.subList(declaration + 1, statements.size())) {
+            List<NameExpr> uses = new ArrayList<>();
+            boolean[] shadowed = {false};
+            Traversal.preOrder(statement, (n, depth) -> {
+                if (n instanceof NameExpr && ((NameExpr) n).getNameAsString().equals(name)) {
+                    uses.add((NameExpr) n);
+                } else if (n instanceof VariableDeclarator && ((VariableDeclarator) n).getNameAsString().equals(name) ||
+                        n instanceof Parameter && ((Parameter) n).getNameAsString().equals(name)) {
+                    // a field or parameter of a nested class could shadow the variable
+                    shadowed[0] = true;
+                }
+            });
+            if (shadowed[0]) {
+                return Optional.empty();
+            }
+            for (NameExpr use : uses) {
+                if (!count(use, statement, onlyAddsSoFar, bound, types)) {
+                    return Optional.empty();
+                }
+            }
+            onlyAddsSoFar = onlyAddsSoFar && isAddOfConstantOrVariable(statement, name);
+        }
+
+        return bound.capacity();
+    }
+
+    /**
+     * Adds what the use adds to the list to the bound. False if it may add elements we can't count.
+     *
+     * @param statement the statement of the block the use is in
+     * @param onlyAddsSoFar whether every statement before that one, after the declaration, is an add of a
+     *                      constant or variable
+     */
+    private static boolean count(NameExpr use, Statement statement, boolean onlyAddsSoFar, Bound bound,
+                                 TypeResolutionCache types) {
+        Node parent = use.getParentNode().orElse(null);
+        if (parent instanceof ForEachStmt && ((ForEachStmt) parent).getIterable() == use) {
+            return true;
+        }
+        // whatever the caller adds is up to the caller
+        if (parent instanceof ReturnStmt) {
+            return true;
+        }
+        if (!(parent instanceof MethodCallExpr)) {
+            // assigned, aliased, returned, ...
+            return false;
+        }
+        MethodCallExpr call = (MethodCallExpr) parent;
+        if (call.getScope().orElse(null) != use) {
+            int argument = call.getArguments().indexOf(use);
+            return argument >= 0 && MethodSummaries.effectOn(call, argument, types) == MethodSummaries.Effect.READS;
+        }
+        if (NON_GROWING_METHODS.contains(call.getNameAsString())) {
+            return true;
+        }
+        if (!"add".equals(call.getNameAsString())) {
+            return false;
+        }
+
+        // once, or once per iteration of a loop whose iterations we can count
+        Expression times = null;
+        for (Node n = call.getParentNode().orElse(null); n != null && n != statement.getParentNode().orElse(null);
+             n = n.getParentNode().orElse(null)) {
+            if (n instanceof LambdaExpr || n instanceof ObjectCreationExpr || n instanceof LocalClassDeclarationStmt ||
+                    n instanceof WhileStmt || n instanceof DoStmt) {
+                return false;
+            }
+            if (n instanceof ForEachStmt || n instanceof ForStmt) {
+                if (n != statement || !onlyAddsSoFar || bound.hasSize() && !bound.isSizeOf(n)) {
+                    return false;
+                }
+                times = iterations(n, types).filter(size -> !mentions(size, use.getNameAsString())).orElse(null);
+                if (times == null || !isInside(call, n instanceof ForEachStmt ?
+                        ((ForEachStmt) n).getBody() : ((ForStmt) n).getBody())) {
+                    return false;
+                }
+            }
+        }
+        if (times == null) {
+            bound.constant++;
+        } else {
+            bound.addSize(statement, times);
+        }
+        return true;
+    }
+
+    /**
+     * How often the body of "for (T e : names)" or "for (int i = 0; i &lt; names.size(); i++)" runs, as an
+     * expression that can be evaluated before the loop: names.size(), or names.length for an array.
+     */
+    private static Optional<Expression> iterations(Node loop, TypeResolutionCache types) {
+        if (loop instanceof ForEachStmt) {
+            Expression iterable = ((ForEachStmt) loop).getIterable();
+            if (!iterable.isNameExpr()) {
+                return Optional.empty();
+            }
+            ResolvedType type;
+            try {
+                type = types.calculateResolvedType(iterable);
+            } catch (RuntimeException e) {
+                return Optional.empty();
+            }
+            if (type.isArray()) {
+                return Optional.of(new FieldAccessExpr(iterable.clone(), "length"));
+            }
+            if (type.isReferenceType() && types.isSubtypeOf(type.asReferenceType(), "java.util.Collection")) {
+                return Optional.of(new MethodCallExpr(iterable.clone(), "size"));
+            }
+            return Optional.empty();
+        }
+
+        // "for (int i = 0; i < names.size(); i++)", where the body leaves i alone
+        ForStmt forStmt = (ForStmt) loop;
+        if (forStmt.getInitialization().size() != 1 ||
+                !forStmt.getInitialization().get(0).isVariableDeclarationExpr() ||
+                forStmt.getInitialization().get(0).asVariableDeclarationExpr().getVariables().size() != 1 ||
+                !forStmt.getCompare().filter(Expression::isBinaryExpr).isPresent() || forStmt.getUpdate().size() != 1) {
+            return Optional.empty();
+        }
+        VariableDeclarator index = forStmt.getInitialization().get(0).asVariableDeclarationExpr().getVariable(0);
+        String i = index.getNameAsString();
+        BinaryExpr compare = forStmt.getCompare().get().asBinaryExpr();
+        Expression update = forStmt.getUpdate().get(0);
+        if (!index.getInitializer().filter(init -> init.isIntegerLiteralExpr() &&
+                "0".equals(init.asIntegerLiteralExpr().getValue())).isPresent() ||
+                compare.getOperator() != BinaryExpr.Operator.LESS || !isName(compare.getLeft(), i) ||
+                !update.isUnaryExpr() || !isName(update.asUnaryExpr().getExpression(), i) ||
+                update.asUnaryExpr().getOperator() != UnaryExpr.Operator.POSTFIX_INCREMENT &&
+                        update.asUnaryExpr().getOperator() != UnaryExpr.Operator.PREFIX_INCREMENT) {
+            return Optional.empty();
+        }
+        Expression limit = compare.getRight();
+        boolean size = limit.isMethodCallExpr() && "size".equals(limit.asMethodCallExpr().getNameAsString()) &&
+                limit.asMethodCallExpr().getArguments().isEmpty() &&
+                limit.asMethodCallExpr().getScope().filter(Expression::isNameExpr).isPresent();
+        boolean length = limit.isFieldAccessExpr() && "length".equals(limit.asFieldAccessExpr().getNameAsString()) &&
+                limit.asFieldAccessExpr().getScope().isNameExpr();
+        if (!size && !length || assigns(forStmt.getBody(), i)) {
+            return Optional.empty();
+        }
+        return Optional.of(limit.clone());
+    }
+
+    private static boolean isName(Expression expression, String name) {
+        return expression.isNameExpr() && expression.asNameExpr().getNameAsString().equals(name);
+    }
+
+    // "list.size()" counts what's been added before the loop, not how often it runs
+    private static boolean mentions(Expression size, String name) {
+        return size.findFirst(NameExpr.class, n -> n.getNameAsString().equals(name)).isPresent();
+    }
+
+    // "i = ...", "i += ...", "i++", ...
+    private static boolean assigns(Node body, String name) {
+        boolean[] assigns = {false};
+        Traversal.preOrder(body, (n, depth) -> {
+            if (n instanceof AssignExpr && isName(((AssignExpr) n).getTarget(), name) ||
+                    n instanceof UnaryExpr && isName(((UnaryExpr) n).getExpression(), name) &&
+                            INCREMENTS.contains(((UnaryExpr) n).getOperator())) {
+                assigns[0] = true;
+            }
+        });
+        return assigns[0];
+    }
+
+    // "list.add(x)" or "list.add(1)": nothing that could change what a size() reads later
+    private static boolean isAddOfConstantOrVariable(Statement statement, String name) {
+        if (!statement.isExpressionStmt() || !statement.asExpressionStmt().getExpression().isMethodCallExpr()) {
+            return false;
+        }
+        MethodCallExpr call = statement.asExpressionStmt().getExpression().asMethodCallExpr();
+        return "add".equals(call.getNameAsString()) &&
+                call.getScope().filter(scope -> isName(scope, name)).isPresent() &&
+                call.getArguments().stream().allMatch(argument -> argument.isLiteralExpr() || argument.isNameExpr());
+    }
+
+    private static boolean isInside(Node node, Node ancestor) {
+        for (Node n = node; n != null; n = n.getParentNode().orElse(null)) {
+            if (n == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // statements compare structurally, and the same one may well be in a block twice
+    private static int indexOf(NodeList<Statement> statements, Node statement) {
+        for (int i = 0; i < statements.size(); i++) {
+            if (statements.get(i) == statement) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * constant + multiplier * size, where size is what one loop iterates over.
+     */
+    private static class Bound {
+        int constant;
+        Node loop;
+        Expression size;
+        int multiplier;
+
+        boolean hasSize() {
+            return size != null;
+        }
+
+        boolean isSizeOf(Node n) {
+            return loop == n;
+        }
+
+        void addSize(Node loop, Expression size) {
+            this.loop = loop;
+            this.size = size;
+            multiplier++;
+        }
+
+        Optional<Expression> capacity() {
+            if (size == null) {
+                return constant == 0 || constant == DEFAULT_CAPACITY ? Optional.empty() :
+                        Optional.of(new IntegerLiteralExpr(constant));
+            }
+            Expression capacity = multiplier == 1 ? size :
+                    new BinaryExpr(new IntegerLiteralExpr(multiplier), size, BinaryExpr.Operator.MULTIPLY);
+            return Optional.of(constant == 0 ? capacity :
+                    new BinaryExpr(capacity, new IntegerLiteralExpr(constant), BinaryExpr.Operator.PLUS));
+        }
+    }
+
+    @Override
+    public void rewrite(Node node, Expression capacity, RuleContext context) {
+        ObjectCreationExpr creation = ((ExpressionStmt) node).getExpression().asVariableDeclarationExpr().getVariable(0)
+                .getInitializer().get().asObjectCreationExpr();
+        ObjectCreationExpr presized = creation.clone();
+        presized.setArguments(new NodeList<>(capacity));
+        // for the PreservingPrinter
+        creation.getRange().ifPresent(range -> presized.setData(ArrayListAnalyzer.REPLACED_RANGE, range));
+        creation.replace(presized);
+
+        // there's a new call to size()
+        context.changed(node);
+    }
+}
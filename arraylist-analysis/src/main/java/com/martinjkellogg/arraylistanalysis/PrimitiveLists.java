@@ -0,0 +1,594 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.ArrayCreationLevel;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.ArrayAccessExpr;
+import com.github.javaparser.ast.expr.ArrayCreationExpr;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.expr.EnclosedExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.IfStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.resolution.types.ResolvedReferenceType;
+import com.github.javaparser.resolution.types.ResolvedType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Replaces local ArrayList&lt;Integer&gt;, ArrayList&lt;Long&gt; and ArrayList&lt;Double&gt; variables with a
+ * primitive array and a size, so adding and reading elements doesn't box:
+ * <pre>
+ *     List&lt;Integer&gt; list = new ArrayList&lt;&gt;();      int[] listValues = new int[10];
+ *                                                  int listSize = 0;
+ *     list.add(x);                                 if (listSize == listValues.length) {
+ *                                                      listValues = java.util.Arrays.copyOf(...);
+ *                                                  }
+ *                                                  listValues[listSize] = x;
+ *                                                  listSize++;
+ *     list.size()                                  listSize
+ *     list.get(i)                                  listValues[i &lt; listSize ? i : -1]
+ *     for (int e : list) { ... }                   for (int i = 0; i &lt; listSize; i++) { int e = listValues[i]; ... }
+ * </pre>
+ *
+ * This is stricter than the locality checks of isLocalArrayList: every use of the variable after its
+ * declaration has to be one of the four above, so the list can't escape or be aliased, and nothing but add
+ * changes it. On top of that the rewrite has to behave exactly like the list did:
+ * <ul>
+ *     <li>only primitive values are added, so there's no null to unbox;</li>
+ *     <li>get(i) past the size still throws (an ArrayIndexOutOfBoundsException is an IndexOutOfBoundsException),
+ *     unless it's in a loop that counts up to the size;</li>
+ *     <li>a value from get() is only used where an int and an Integer mean the same thing, e.g. not with ==, as an
+ *     argument (overloads like List.remove(int) and remove(Object)), or in a conditional. Stored or returned, it
+ *     has to be as a primitive, and so does the variable of a loop over the list: boxing a value again makes a
+ *     new Integer (outside the small ones Integer.valueOf caches), not the one the list held;</li>
+ *     <li>nothing is added while the list is iterated, which would have thrown a ConcurrentModificationException;</li>
+ *     <li>the list isn't used in a lambda or a local or anonymous class, since the size and array aren't final.</li>
+ * </ul>
+ */
+class PrimitiveLists implements RewriteRule<PrimitiveLists.Uses> {
+
+    // ArrayList's default capacity
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private static final Map<String, PrimitiveType.Primitive> ELEMENT_TYPES = new HashMap<>();
+    static {
+        ELEMENT_TYPES.put("java.lang.Integer", PrimitiveType.Primitive.INT);
+        ELEMENT_TYPES.put("java.lang.Long", PrimitiveType.Primitive.LONG);
+        ELEMENT_TYPES.put("java.lang.Double", PrimitiveType.Primitive.DOUBLE);
+    }
+
+    /**
+     * Rewrites every list in the compilation unit that can be proven safe.
+     *
+     * @return the number of lists that were rewritten
+     */
+    static int transform(CompilationUnit cu, TypeResolutionCache types) {
+        return new RuleEngine(Collections.singletonList(new PrimitiveLists()))
+                .transform(cu, types, AnalysisMetrics.disabled());
+    }
+
+    // the declaration statement; it runs top-down, so it sees the uses before other rules rewrite them
+    @Override
+    public boolean matches(Node node) {
+        if (!(node instanceof ExpressionStmt) || !((ExpressionStmt) node).getExpression().isVariableDeclarationExpr()) {
+            return false;
+        }
+        NodeList<VariableDeclarator> variables =
+                ((ExpressionStmt) node).getExpression().asVariableDeclarationExpr().getVariables();
+        return variables.size() == 1 && isNewArrayList(variables.get(0));
+    }
+
+    @Override
+    public Optional<Uses> check(Node node, RuleContext context) {
+        return findUses(declarator(node), context.getTypes());
+    }
+
+    @Override
+    public void rewrite(Node node, Uses uses, RuleContext context) {
+        // read before the rewrite replaces the statement
+        Node block = node.getParentNode().get();
+        rewrite(declarator(node), uses, context.getNames());
+        // the adds and gets are gone
+        context.changed(block);
+    }
+
+    private static VariableDeclarator declarator(Node statement) {
+        return ((ExpressionStmt) statement).getExpression().asVariableDeclarationExpr().getVariable(0);
+    }
+
+    /**
+     * The cheap, syntactic part: "new ArrayList&lt;...&gt;()" (or with a literal capacity) as the only variable
+     * of a declaration statement in a block.
+     */
+    private static boolean isNewArrayList(VariableDeclarator declarator) {
+        Optional<Expression> initializer = declarator.getInitializer();
+        if (!initializer.isPresent() || !initializer.get().isObjectCreationExpr()) {
+            return false;
+        }
+        ObjectCreationExpr creation = initializer.get().asObjectCreationExpr();
+        if (!"ArrayList".equals(creation.getType().getNameAsString()) || creation.getAnonymousClassBody().isPresent()) {
+            return false;
+        }
+        if (creation.getArguments().size() > 1 ||
+                (creation.getArguments().size() == 1 && !creation.getArgument(0).isIntegerLiteralExpr())) {
+            return false;
+        }
+
+        Optional<Node> declaration = declarator.getParentNode();
+        if (!declaration.isPresent() || !(declaration.get() instanceof VariableDeclarationExpr) ||
+                ((VariableDeclarationExpr) declaration.get()).getVariables().size() != 1) {
+            return false;
+        }
+        Optional<Node> statement = declaration.get().getParentNode();
+        return statement.isPresent() && statement.get() instanceof ExpressionStmt &&
+                statement.get().getParentNode().filter(parent -> parent instanceof BlockStmt).isPresent();
+    }
+
+    /**
+     * Classifies every use of the variable, or returns nothing if the list can't be rewritten.
+     */
+    private static Optional<Uses> findUses(VariableDeclarator declarator, TypeResolutionCache types) {
+        String name = declarator.getNameAsString();
+        ExpressionStmt declaration = (ExpressionStmt) declarator.getParentNode().get().getParentNode().get();
+        BlockStmt block = (BlockStmt) declaration.getParentNode().get();
+
+        // the variable is in scope from its declaration to the end of the block
+        List<Statement> scope =
+                block.getStatements().subList(indexOf(block, declaration) + 1, block.getStatements().size());
+
+        Uses uses = new Uses();
+        List<NameExpr> names = new ArrayList<>();
+        for (Statement statement : scope) {
+            names.addAll(statement.findAll(NameExpr.class, e -> e.getNameAsString().equals(name)));
+
+            // a field or parameter of a nested class could shadow the variable
+            if (!statement.findAll(VariableDeclarator.class, d -> d.getNameAsString().equals(name)).isEmpty() ||
+                    !statement.findAll(Parameter.class, p -> p.getNameAsString().equals(name)).isEmpty()) {
+                return Optional.empty();
+            }
+        }
+        if (names.isEmpty()) {
+            // nothing to gain
+            return Optional.empty();
+        }
+
+        ResolvedType type = types.calculateResolvedType(names.get(0));
+        if (!type.isReferenceType()) {
+            return Optional.empty();
+        }
+        ResolvedReferenceType listType = type.asReferenceType();
+        if (!("java.util.ArrayList".equals(listType.getQualifiedName()) ||
+                "java.util.List".equals(listType.getQualifiedName())) ||
+                listType.typeParametersValues().size() != 1) {
+            return Optional.empty();
+        }
+        ResolvedType elementType = listType.typeParametersValues().get(0);
+        if (!elementType.isReferenceType() ||
+                !ELEMENT_TYPES.containsKey(elementType.asReferenceType().getQualifiedName())) {
+            return Optional.empty();
+        }
+        uses.elementType = ELEMENT_TYPES.get(elementType.asReferenceType().getQualifiedName());
+
+        // "ArrayList" might be some other class of that name
+        ResolvedType created = types.calculateResolvedType(declarator.getInitializer().get());
+        if (!created.isReferenceType() || !"java.util.ArrayList".equals(created.asReferenceType().getQualifiedName())) {
+            return Optional.empty();
+        }
+
+        for (NameExpr use : names) {
+            if (!classify(use, name, block, uses, types)) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(uses);
+    }
+
+    private static boolean classify(NameExpr use, String name, BlockStmt block, Uses uses, TypeResolutionCache types) {
+        if (isCaptured(use, block)) {
+            return false;
+        }
+
+        Node parent = use.getParentNode().get();
+        if (parent instanceof ForEachStmt && ((ForEachStmt) parent).getIterable() == use) {
+            // an "Integer e" would be a new box of the value, not the one in the list
+            if (!((ForEachStmt) parent).getVariable().getVariable(0).getType().isPrimitiveType()) {
+                return false;
+            }
+            uses.forEachStmts.add((ForEachStmt) parent);
+            return true;
+        }
+        if (!(parent instanceof MethodCallExpr) || ((MethodCallExpr) parent).getScope().orElse(null) != use) {
+            // passed somewhere, assigned, compared, ...
+            return false;
+        }
+
+        MethodCallExpr call = (MethodCallExpr) parent;
+        Node callParent = call.getParentNode().get();
+        switch (call.getNameAsString()) {
+            case "size":
+                if (!call.getArguments().isEmpty() || callParent instanceof ExpressionStmt) {
+                    return false;
+                }
+                uses.sizeCalls.add(call);
+                return true;
+            case "get":
+                if (call.getArguments().size() != 1 || !isValueContext(call, types)) {
+                    return false;
+                }
+                Expression index = call.getArgument(0);
+                if (isCountedUpToSize(index, call, name)) {
+                    uses.countedGetCalls.add(call);
+                    return true;
+                }
+                // the guarded form evaluates the index twice
+                if (!isPure(index, name)) {
+                    return false;
+                }
+                uses.getCalls.add(call);
+                return true;
+            case "add":
+                if (call.getArguments().size() != 1 || !(callParent instanceof ExpressionStmt)) {
+                    return false;
+                }
+                // null can be added to the list, but not to the array
+                if (!types.calculateResolvedType(call.getArgument(0)).isPrimitive()) {
+                    return false;
+                }
+                for (Node n = call; n != block; n = n.getParentNode().get()) {
+                    if (n instanceof ForEachStmt && isUseOf(((ForEachStmt) n).getIterable(), name)) {
+                        return false;
+                    }
+                }
+                uses.addStmts.add((ExpressionStmt) callParent);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // the rewritten variables aren't effectively final, so they can't be used in lambdas or nested classes
+    private static boolean isCaptured(Node use, BlockStmt block) {
+        for (Node n = use; n != block; n = n.getParentNode().get()) {
+            if (n instanceof LambdaExpr || n instanceof MethodReferenceExpr ||
+                    n instanceof ClassOrInterfaceDeclaration ||
+                    (n instanceof ObjectCreationExpr && ((ObjectCreationExpr) n).getAnonymousClassBody().isPresent())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the value of the get() call is used somewhere an int behaves just like the Integer it replaces.
+     * Anywhere it ends up boxed again, the new box isn't the one the list held.
+     */
+    private static boolean isValueContext(Expression call, TypeResolutionCache types) {
+        Node child = call;
+        Node parent = call.getParentNode().get();
+        while (parent instanceof EnclosedExpr) {
+            child = parent;
+            parent = parent.getParentNode().get();
+        }
+
+        if (parent instanceof BinaryExpr) {
+            // "==" compares references if the other side is boxed too
+            BinaryExpr.Operator operator = ((BinaryExpr) parent).getOperator();
+            return operator != BinaryExpr.Operator.EQUALS && operator != BinaryExpr.Operator.NOT_EQUALS;
+        }
+        if (parent instanceof UnaryExpr) {
+            return true;
+        }
+        if (parent instanceof ReturnStmt) {
+            // lambdas were ruled out before, so this returns from a method
+            return call.findAncestor(MethodDeclaration.class).filter(m -> m.getType().isPrimitiveType()).isPresent();
+        }
+        if (parent instanceof VariableDeclarator) {
+            return ((VariableDeclarator) parent).getType().isPrimitiveType();
+        }
+        if (parent instanceof AssignExpr) {
+            AssignExpr assign = (AssignExpr) parent;
+            if (assign.getValue() != child) {
+                return false;
+            }
+            // "total += list.get(i)" unboxes either way
+            if (assign.getOperator() != AssignExpr.Operator.ASSIGN) {
+                return true;
+            }
+            try {
+                return types.calculateResolvedType(assign.getTarget()).isPrimitive();
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+        if (parent instanceof ArrayAccessExpr) {
+            return ((ArrayAccessExpr) parent).getIndex() == child;
+        }
+        // method arguments (overloads), conditionals (unboxing the other branch), method calls on the value, ...
+        return false;
+    }
+
+    /**
+     * Whether the index is the variable of an enclosing "for (int i = 0; i &lt; list.size(); i++)" that isn't
+     * changed anywhere else. The list never shrinks, so such an index is always in bounds.
+     */
+    private static boolean isCountedUpToSize(Expression index, MethodCallExpr call, String name) {
+        if (!index.isNameExpr()) {
+            return false;
+        }
+        String counter = index.asNameExpr().getNameAsString();
+
+        Optional<ForStmt> loop = call.findAncestor(ForStmt.class);
+        if (!loop.isPresent()) {
+            return false;
+        }
+        ForStmt forStmt = loop.get();
+
+        // for (int i = 0; ...
+        if (forStmt.getInitialization().size() != 1 ||
+                !forStmt.getInitialization().get(0).isVariableDeclarationExpr()) {
+            return false;
+        }
+        NodeList<VariableDeclarator> variables =
+                forStmt.getInitialization().get(0).asVariableDeclarationExpr().getVariables();
+        if (variables.size() != 1 || !variables.get(0).getNameAsString().equals(counter) ||
+                !variables.get(0).getInitializer().filter(e -> e.isIntegerLiteralExpr() &&
+                        !e.asIntegerLiteralExpr().getValue().startsWith("-")).isPresent()) {
+            return false;
+        }
+
+        // ...; i < list.size(); ...
+        Optional<Expression> compare = forStmt.getCompare();
+        if (!compare.isPresent() || !compare.get().isBinaryExpr()) {
+            return false;
+        }
+        BinaryExpr comparison = compare.get().asBinaryExpr();
+        if (comparison.getOperator() != BinaryExpr.Operator.LESS || !isUseOf(comparison.getLeft(), counter) ||
+                !comparison.getRight().isMethodCallExpr() ||
+                !comparison.getRight().asMethodCallExpr().getNameAsString().equals("size") ||
+                !comparison.getRight().asMethodCallExpr().getScope()
+                        .filter(scope -> isUseOf(scope, name)).isPresent()) {
+            return false;
+        }
+
+        // ...; i++)
+        if (forStmt.getUpdate().size() != 1 || !isIncrement(forStmt.getUpdate().get(0), counter)) {
+            return false;
+        }
+
+        // and nothing else touches i
+        for (AssignExpr assign : forStmt.getBody().findAll(AssignExpr.class)) {
+            if (isUseOf(assign.getTarget(), counter)) {
+                return false;
+            }
+        }
+        for (UnaryExpr unary : forStmt.getBody().findAll(UnaryExpr.class)) {
+            UnaryExpr.Operator operator = unary.getOperator();
+            if ((operator == UnaryExpr.Operator.PREFIX_INCREMENT ||
+                    operator == UnaryExpr.Operator.PREFIX_DECREMENT ||
+                    operator == UnaryExpr.Operator.POSTFIX_INCREMENT ||
+                    operator == UnaryExpr.Operator.POSTFIX_DECREMENT) &&
+                    isUseOf(unary.getExpression(), counter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIncrement(Expression update, String counter) {
+        if (update.isUnaryExpr()) {
+            UnaryExpr.Operator operator = update.asUnaryExpr().getOperator();
+            return (operator == UnaryExpr.Operator.POSTFIX_INCREMENT ||
+                    operator == UnaryExpr.Operator.PREFIX_INCREMENT) &&
+                    isUseOf(update.asUnaryExpr().getExpression(), counter);
+        }
+        if (update.isAssignExpr()) {
+            AssignExpr assign = update.asAssignExpr();
+            return assign.getOperator() == AssignExpr.Operator.PLUS && isUseOf(assign.getTarget(), counter) &&
+                    assign.getValue().isIntegerLiteralExpr() &&
+                    assign.getValue().asIntegerLiteralExpr().getValue().equals("1");
+        }
+        return false;
+    }
+
+    /**
+     * Whether evaluating the expression twice is the same as evaluating it once: names, literals, arithmetic and
+     * the size of the list.
+     */
+    private static boolean isPure(Expression expression, String name) {
+        if (expression.isNameExpr() || expression.isIntegerLiteralExpr()) {
+            return true;
+        }
+        if (expression.isEnclosedExpr()) {
+            return isPure(expression.asEnclosedExpr().getInner(), name);
+        }
+        if (expression.isBinaryExpr()) {
+            return isPure(expression.asBinaryExpr().getLeft(), name) &&
+                    isPure(expression.asBinaryExpr().getRight(), name);
+        }
+        if (expression.isUnaryExpr()) {
+            UnaryExpr.Operator operator = expression.asUnaryExpr().getOperator();
+            return (operator == UnaryExpr.Operator.MINUS || operator == UnaryExpr.Operator.PLUS) &&
+                    isPure(expression.asUnaryExpr().getExpression(), name);
+        }
+        if (expression.isMethodCallExpr()) {
+            MethodCallExpr call = expression.asMethodCallExpr();
+            return call.getNameAsString().equals("size") && call.getArguments().isEmpty() &&
+                    call.getScope().filter(scope -> isUseOf(scope, name)).isPresent();
+        }
+        return false;
+    }
+
+    private static boolean isUseOf(Expression expression, String name) {
+        return expression.isNameExpr() && expression.asNameExpr().getNameAsString().equals(name);
+    }
+
+    private static void rewrite(VariableDeclarator declarator, Uses uses, LocalNames names) {
+        String name = declarator.getNameAsString();
+        String valuesName = names.fresh(declarator, name + "Values");
+        String sizeName = names.fresh(declarator, name + "Size");
+
+        // int[] listValues = new int[10]; int listSize = 0;
+        ObjectCreationExpr creation = declarator.getInitializer().get().asObjectCreationExpr();
+        Expression capacity = creation.getArguments().isEmpty() ?
+                new IntegerLiteralExpr(DEFAULT_CAPACITY) : creation.getArgument(0);
+        ArrayCreationExpr array = new ArrayCreationExpr(new PrimitiveType(uses.elementType),
+                new NodeList<>(new ArrayCreationLevel(capacity)), null);
+        Statement valuesDeclaration = new ExpressionStmt(new VariableDeclarationExpr(
+                new VariableDeclarator(new ArrayType(new PrimitiveType(uses.elementType)), valuesName, array)));
+        Statement sizeDeclaration = new ExpressionStmt(new VariableDeclarationExpr(
+                new VariableDeclarator(PrimitiveType.intType(), sizeName, new IntegerLiteralExpr(0))));
+        replace((Statement) declarator.getParentNode().get().getParentNode().get(), valuesDeclaration, sizeDeclaration);
+
+        for (MethodCallExpr call : uses.sizeCalls) {
+            replace(call, new NameExpr(sizeName));
+        }
+
+        for (MethodCallExpr call : uses.countedGetCalls) {
+            replace(call, new ArrayAccessExpr(new NameExpr(valuesName), call.getArgument(0)));
+        }
+
+        for (MethodCallExpr call : uses.getCalls) {
+            // i < listSize ? i : -1, so reading past the size throws like the list did
+            Expression index = call.getArgument(0);
+            Expression guarded = new ConditionalExpr(
+                    new BinaryExpr(index.clone(), new NameExpr(sizeName), BinaryExpr.Operator.LESS),
+                    index, new UnaryExpr(new IntegerLiteralExpr(1), UnaryExpr.Operator.MINUS));
+            replace(call, new ArrayAccessExpr(new NameExpr(valuesName), guarded));
+        }
+
+        for (ExpressionStmt add : uses.addStmts) {
+            Expression value = add.getExpression().asMethodCallExpr().getArgument(0);
+
+            // grow by half, like ArrayList
+            Expression arrays = new FieldAccessExpr(new FieldAccessExpr(new NameExpr("java"), "util"), "Arrays");
+            Expression grown = new MethodCallExpr(arrays, "copyOf",
+                    new NodeList<>(new NameExpr(valuesName), new BinaryExpr(
+                            new BinaryExpr(new NameExpr(sizeName),
+                                    new EnclosedExpr(new BinaryExpr(new NameExpr(sizeName), new IntegerLiteralExpr(1),
+                                            BinaryExpr.Operator.SIGNED_RIGHT_SHIFT)),
+                                    BinaryExpr.Operator.PLUS),
+                            new IntegerLiteralExpr(1), BinaryExpr.Operator.PLUS)));
+            Statement grow = new IfStmt(
+                    new BinaryExpr(new NameExpr(sizeName), new FieldAccessExpr(new NameExpr(valuesName), "length"),
+                            BinaryExpr.Operator.EQUALS),
+                    new BlockStmt(new NodeList<>(new ExpressionStmt(
+                            new AssignExpr(new NameExpr(valuesName), grown, AssignExpr.Operator.ASSIGN)))),
+                    null);
+            // the value is stored before the size goes up, so if computing it throws the list doesn't change
+            Statement store = new ExpressionStmt(new AssignExpr(
+                    new ArrayAccessExpr(new NameExpr(valuesName), new NameExpr(sizeName)), value,
+                    AssignExpr.Operator.ASSIGN));
+            Statement increment = new ExpressionStmt(
+                    new UnaryExpr(new NameExpr(sizeName), UnaryExpr.Operator.POSTFIX_INCREMENT));
+
+            replace(add, grow, store, increment);
+        }
+
+        for (ForEachStmt forEachStmt : uses.forEachStmts) {
+            String index = names.fresh(forEachStmt, "i");
+
+            // the loop variable is a primitive (classify made sure), so it reads the value as it is
+            VariableDeclarationExpr element = forEachStmt.getVariable();
+            element.getVariable(0).setInitializer(new ArrayAccessExpr(new NameExpr(valuesName), new NameExpr(index)));
+            BlockStmt body = forEachStmt.getBody().isBlockStmt() ?
+                    forEachStmt.getBody().asBlockStmt() : new BlockStmt(new NodeList<>(forEachStmt.getBody()));
+            body.getStatements().add(0, new ExpressionStmt(element));
+
+            ForStmt forStmt = new ForStmt(
+                    new NodeList<>(new VariableDeclarationExpr(
+                            new VariableDeclarator(PrimitiveType.intType(), index, new IntegerLiteralExpr(0)))),
+                    new BinaryExpr(new NameExpr(index), new NameExpr(sizeName), BinaryExpr.Operator.LESS),
+                    new NodeList<>(new UnaryExpr(new NameExpr(index), UnaryExpr.Operator.POSTFIX_INCREMENT)),
+                    body);
+            replace(forEachStmt, forStmt);
+        }
+    }
+
+    /**
+     * Puts the replacement where the original was, and remembers the original's range for the
+     * {@link PreservingPrinter}.
+     */
+    private static void replace(Node original, Node replacement) {
+        original.getRange().ifPresent(range -> replacement.setData(ArrayListAnalyzer.REPLACED_RANGE, range));
+        original.getComment().ifPresent(replacement::setComment);
+        original.replace(replacement);
+    }
+
+    /**
+     * Replaces a statement with several. Outside a block they're wrapped in one.
+     */
+    private static void replace(Statement original, Statement... replacements) {
+        Node parent = original.getParentNode().get();
+        if (!(parent instanceof BlockStmt)) {
+            replace(original, new BlockStmt(new NodeList<>(replacements)));
+            return;
+        }
+
+        BlockStmt block = (BlockStmt) parent;
+        int index = indexOf(block, original);
+        original.getRange().ifPresent(range -> {
+            for (Statement replacement : replacements) {
+                replacement.setData(ArrayListAnalyzer.REPLACED_RANGE, range);
+            }
+        });
+        original.getComment().ifPresent(replacements[0]::setComment);
+
+        block.getStatements().set(index, replacements[0]);
+        for (int i = 1; i < replacements.length; i++) {
+            block.getStatements().add(index + i, replacements[i]);
+        }
+    }
+
+    // NodeList.indexOf compares structurally, and a block can easily have two identical "list.add(1);"
+    private static int indexOf(BlockStmt block, Statement statement) {
+        NodeList<Statement> statements = block.getStatements();
+        for (int i = 0; i < statements.size(); i++) {
+            if (statements.get(i) == statement) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("statement is not in the block");
+    }
+
+    /**
+     * Every use of a list variable, by kind.
+     */
+    static class Uses {
+        PrimitiveType.Primitive elementType;
+        final List<MethodCallExpr> sizeCalls = new ArrayList<>();
+        // get(i) where i is known to be in bounds
+        final List<MethodCallExpr> countedGetCalls = new ArrayList<>();
+        final List<MethodCallExpr> getCalls = new ArrayList<>();
+        final List<ExpressionStmt> addStmts = new ArrayList<>();
+        final List<ForEachStmt> forEachStmts = new ArrayList<>();
+    }
+}
@@ -0,0 +1,251 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of per-file analysis results, so files that didn't change since the last run don't have to
+ * be parsed and resolved again.
+ *
+ * Entries are keyed by a hash of the file contents together with a fingerprint of everything else that
+ * influences the result (the analyzer version and the banned methods), so the path of a file doesn't matter
+ * and changing the analyzer invalidates everything. Each entry records how many loops were replaced (0 means
+ * there were no candidates, and nothing was written) and the hash of the text we wrote; the text itself lives
+ * next to the index.
+ *
+ * The directory looks like this:
+ * <pre>
+ *     results.tsv             key, replaced loops and output hash ("-" if nothing was written), one per line
+ *     outputs/HASH.java       the text written for an entry
+ * </pre>
+ */
+public class ResultCache {
+
+    private static final String INDEX_FILE = "results.tsv";
+    private static final String OUTPUTS_DIRECTORY = "outputs";
+    private static final String NO_OUTPUT = "-";
+
+    private final Path directory;
+    private final String fingerprint;
+
+    // everything we read at startup
+    private final Map<String, Entry> previous;
+    // only the entries used during this run are written back, so entries for deleted or changed files go away
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private ResultCache(Path directory, String fingerprint, Map<String, Entry> previous) {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens the cache in the given directory, creating it if needed.
+     *
+     * @param fingerprint describes the analyzer configuration, see {@link ArrayListAnalyzer#cacheFingerprint()}
+     */
+    public static ResultCache open(Path directory, String fingerprint) throws IOException {
+        Files.createDirectories(directory.resolve(OUTPUTS_DIRECTORY));
+
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                // a truncated or hand-edited line just means one more cache miss
+                if (fields.length != 3) {
+                    continue;
+                }
+                try {
+                    entries.put(fields[0], new Entry(Integer.parseInt(fields[1]), fields[2]));
+                } catch (NumberFormatException e) {
+                    // same as above
+                }
+            }
+        }
+
+        return new ResultCache(directory, fingerprint, entries);
+    }
+
+    /**
+     * The key of a file with the given contents.
+     */
+    public String key(byte[] content) {
+        MessageDigest digest = sha256();
+        digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(content);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Looks up a result. Returns null if there is none, or if the text we wrote for it went missing.
+     */
+    public Entry get(String key) {
+        Entry entry = previous.get(key);
+        if (entry == null) {
+            entry = current.get(key);
+        }
+
+        if (entry == null || (entry.hasOutput() && !Files.exists(outputPath(entry.getOutputHash())))) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        current.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Records the result of analyzing a file.
+     *
+     * @param replaced the number of loops that were replaced
+     * @param output the text that was written for the file, or null if nothing was written
+     */
+    public Entry put(String key, int replaced, String output) throws IOException {
+        if (output == null) {
+            Entry entry = new Entry(replaced, NO_OUTPUT);
+            current.put(key, entry);
+            return entry;
+        }
+
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        Entry entry = new Entry(replaced, hash(bytes));
+
+        Path outputPath = outputPath(entry.getOutputHash());
+        if (!Files.exists(outputPath)) {
+            // write and rename, so a crash can't leave a half-written output behind a valid hash
+            Path temp = Files.createTempFile(outputPath.getParent(), "output", ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        current.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Makes sure the target file contains the output recorded for the entry. If it already does, or nothing was
+     * written for the entry, it isn't touched, so its modification time only changes when its content does.
+     *
+     * @return whether the target was written
+     */
+    public boolean restore(Entry entry, Path target) throws IOException {
+        if (!entry.hasOutput()) {
+            return false;
+        }
+        if (Files.isRegularFile(target) && entry.getOutputHash().equals(hash(Files.readAllBytes(target)))) {
+            return false;
+        }
+
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Files.copy(outputPath(entry.getOutputHash()), target, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Writes the entries used during this run back to disk and deletes outputs nobody refers to any more.
+     */
+    public void save() throws IOException {
+        Path temp = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : current.entrySet()) {
+                writer.write(e.getKey() + "\t" + e.getValue().getReplaced() + "\t" + e.getValue().getOutputHash());
+                writer.newLine();
+            }
+        }
+        Files.move(temp, directory.resolve(INDEX_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Set<String> used = current.values().stream().map(Entry::getOutputHash).collect(Collectors.toSet());
+        List<Path> unused;
+        try (Stream<Path> outputs = Files.list(directory.resolve(OUTPUTS_DIRECTORY))) {
+            unused = outputs
+                    .filter(path -> !used.contains(path.getFileName().toString().replace(".java", "")))
+                    .collect(Collectors.toList());
+        }
+        for (Path path : unused) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private Path outputPath(String outputHash) {
+        return directory.resolve(OUTPUTS_DIRECTORY).resolve(outputHash + ".java");
+    }
+
+    static String hash(byte[] bytes) {
+        return toHex(sha256().digest(bytes));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The cached result for one file.
+     */
+    public static class Entry {
+        private final int replaced;
+        private final String outputHash;
+
+        Entry(int replaced, String outputHash) {
+            this.replaced = replaced;
+            this.outputHash = outputHash;
+        }
+
+        /** The number of loops that were replaced, 0 if the file had no candidates. */
+        public int getReplaced() {
+            return replaced;
+        }
+
+        /** Whether anything was written for the file. */
+        public boolean hasOutput() {
+            return !NO_OUTPUT.equals(outputHash);
+        }
+
+        public String getOutputHash() {
+            return outputHash;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+
+import java.util.Optional;
+
+/**
+ * One rewrite, split in three steps so a {@link RuleEngine} can run any number of them in the same walk over a
+ * file:
+ * <ol>
+ *     <li>{@link #matches} is a cheap, syntactic test, done for every node;</li>
+ *     <li>{@link #check} proves that rewriting the node is safe, resolving types through the context. It returns
+ *     whatever the rewrite needs to know, or nothing to leave the node alone;</li>
+ *     <li>{@link #rewrite} replaces the node.</li>
+ * </ol>
+ * Rules are handed the children of the node the walk is at, so they may replace the node they're given, and
+ * anything after it in the same parent, but nothing before it. Rules are shared by every file and thread; state
+ * for a file belongs in the context.
+ *
+ * @param <F> what check found out, for rewrite
+ */
+public interface RewriteRule<F> {
+
+    boolean matches(Node node);
+
+    Optional<F> check(Node node, RuleContext context);
+
+    void rewrite(Node node, F findings, RuleContext context);
+
+    /**
+     * Whether the rule sees a node after everything nested in it has been rewritten, instead of before. Rules
+     * that look at what a node contains (like whether a loop body changes a list) want to see it rewritten
+     * already. Rules that rewrite uses of a declaration further down want to run before other rules rewrite
+     * those uses.
+     */
+    default boolean isBottomUp() {
+        return false;
+    }
+}
@@ -0,0 +1,696 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks that rewritten files still do what the originals did, and measures whether they're faster.
+ *
+ * For every file in the output directory, the original and the rewritten version are compiled in memory with
+ * javax.tools, each into its own class loader, against the same classpath (other sources below the root are
+ * compiled along as needed). Every method whose body the rewrite changed is then called on both sides with the
+ * same generated arguments: random numbers, strings, lists and arrays, of random lengths. What the two sides
+ * return or throw, print, and leave in the arguments and the instance has to be the same for every input.
+ *
+ * Methods that behave the same are then timed: both versions are called in alternating rounds on lists of
+ * {@value #BENCHMARK_SIZE} elements, after a few rounds of warm-up, and the medians are compared. It's a
+ * quick in-process measurement rather than a JMH benchmark (see the benchmarks module), but both sides pay the
+ * same reflection and JIT costs, so the ratio is a fair hint.
+ *
+ * Methods we can't call are reported and skipped: ones in anonymous or local classes, instance methods of
+ * classes without a no-argument constructor, and ones taking parameters we can't make up values for.
+ * Needs a JDK, since a JRE has no compiler.
+ */
+public class RewriteVerifier {
+
+    static final int BENCHMARK_SIZE = 1_000;
+    // lists and arrays of up to this many elements, including empty ones
+    private static final int INPUT_SIZE = 8;
+    private static final long CALL_TIMEOUT_MILLIS = 10_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final long ROUND_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final Object UNSUPPORTED = new Object();
+
+    private final Path root;
+    private final Path output;
+    private final List<Path> classpath;
+    private final int inputs;
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    private final JavaParser parser = new JavaParser();
+
+    private ExecutorService runner = newRunner();
+    private int verified;
+    private int different;
+    private int skipped;
+
+    // keeps benchmark results alive, so the JIT can't drop the calls
+    static volatile int sink;
+
+    /**
+     * @param root where the original sources are
+     * @param output where the rewritten ones are, in the same layout
+     * @param classpath jars, class directories and source roots the sources need
+     * @param inputs how many sets of arguments each method is called with
+     */
+    public RewriteVerifier(Path root, Path output, List<Path> classpath, int inputs) {
+        this.root = root;
+        this.output = output;
+        this.classpath = classpath;
+        this.inputs = inputs;
+    }
+
+    /**
+     * Verifies and times every rewritten file in the output directory, printing a line per method.
+     *
+     * @return the number of methods that behaved differently, or didn't compile anymore
+     */
+    public int verifyAll() throws IOException {
+        if (compiler == null) {
+            throw new IOException("verifying rewrites needs a JDK, this is a JRE");
+        }
+        if (!Files.isDirectory(output)) {
+            return 0;
+        }
+
+        List<Path> rewritten;
+        try (Stream<Path> paths = Files.walk(output)) {
+            rewritten = paths.filter(path -> path.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+        try {
+            for (Path file : rewritten) {
+                verifyFile(output.relativize(file));
+            }
+        } finally {
+            runner.shutdownNow();
+        }
+
+        System.out.println("Verified " + verified + " rewritten methods: " + different + " behaved differently, " +
+                skipped + " couldn't be called");
+        return different;
+    }
+
+    private void verifyFile(Path relative) throws IOException {
+        Path originalFile = root.resolve(relative.toString());
+        Path rewrittenFile = output.resolve(relative);
+        if (!Files.exists(originalFile)) {
+            return;
+        }
+
+        Map<String, MethodDeclaration> originalMethods = methods(originalFile);
+        Map<String, MethodDeclaration> rewrittenMethods = methods(rewrittenFile);
+        // pretty printed on both sides, so only changes count, not formatting
+        List<MethodDeclaration> changed = rewrittenMethods.entrySet().stream()
+                .filter(e -> originalMethods.containsKey(e.getKey()) &&
+                        !originalMethods.get(e.getKey()).toString().equals(e.getValue().toString()))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        List<String> errors = new ArrayList<>();
+        Optional<ClassLoader> original = compile(originalFile, errors);
+        if (!original.isPresent()) {
+            System.out.println(relative + ": the original doesn't compile, skipping it: " + errors.get(0));
+            skipped += changed.size();
+            return;
+        }
+        Optional<ClassLoader> rewritten = compile(rewrittenFile, errors);
+        if (!rewritten.isPresent()) {
+            System.out.println(relative + ": DIFFERENT, the rewritten file doesn't compile: " + errors.get(0));
+            different += changed.size();
+            return;
+        }
+
+        for (MethodDeclaration method : changed) {
+            verifyMethod(relative, method, original.get(), rewritten.get());
+        }
+    }
+
+    // by the name the JVM has for them and their parameter types; methods in anonymous and local classes have none
+    private Map<String, MethodDeclaration> methods(Path file) throws IOException {
+        ParseResult<CompilationUnit> result =
+                parser.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        if (!result.getResult().isPresent()) {
+            return Collections.emptyMap();
+        }
+        Map<String, MethodDeclaration> methods = new LinkedHashMap<>();
+        for (MethodDeclaration method : result.getResult().get().findAll(MethodDeclaration.class)) {
+            methods.put(ExecutionProfile.methodName(method) + parameterTypes(method), method);
+        }
+        return methods;
+    }
+
+    private static String parameterTypes(MethodDeclaration method) {
+        return method.getParameters().stream().map(p -> erasure(p)).collect(Collectors.joining(",", "(", ")"));
+    }
+
+    // "java.util.List<String>... xs" -> "List[]", like Class.getSimpleName of the erased type
+    private static String erasure(Parameter parameter) {
+        Type type = parameter.getType();
+        StringBuilder dimensions = new StringBuilder(parameter.isVarArgs() ? "[]" : "");
+        while (type.isArrayType()) {
+            dimensions.append("[]");
+            type = type.asArrayType().getComponentType();
+        }
+        String name = type instanceof ClassOrInterfaceType ? ((ClassOrInterfaceType) type).getNameAsString() :
+                type.asString();
+        return name + dimensions;
+    }
+
+    private void verifyMethod(Path relative, MethodDeclaration declaration, ClassLoader original,
+                              ClassLoader rewritten) {
+        String name = ExecutionProfile.methodName(declaration);
+        if (name == null) {
+            System.out.println(relative + ": " + declaration.getNameAsString() + parameterTypes(declaration) +
+                    ": skipped, it's in an anonymous or local class");
+            skipped++;
+            return;
+        }
+        String label = relative + ": " + name.substring(name.lastIndexOf('.') + 1) + parameterTypes(declaration);
+
+        Method originalMethod;
+        Method rewrittenMethod;
+        try {
+            originalMethod = find(original, name, declaration);
+            rewrittenMethod = find(rewritten, name, declaration);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println(label + ": skipped, can't load it: " + e);
+            skipped++;
+            return;
+        }
+        if (!Modifier.isStatic(originalMethod.getModifiers()) && !hasNoArgumentConstructor(originalMethod)) {
+            System.out.println(label + ": skipped, needs an instance and there's no constructor without arguments");
+            skipped++;
+            return;
+        }
+
+        Random random = new Random(label.hashCode());
+        for (int i = 0; i < inputs; i++) {
+            long seed = random.nextLong();
+            Object[] originalArguments = arguments(originalMethod, seed, INPUT_SIZE);
+            if (originalArguments == null) {
+                System.out.println(label + ": skipped, can't make up arguments of its parameter types");
+                skipped++;
+                return;
+            }
+            Object[] rewrittenArguments = arguments(rewrittenMethod, seed, INPUT_SIZE);
+
+            Optional<Outcome> before = call(originalMethod, originalArguments);
+            Optional<Outcome> after = call(rewrittenMethod, rewrittenArguments);
+            if (!before.isPresent() || !after.isPresent()) {
+                System.out.println(label + ": skipped, a call took longer than " + CALL_TIMEOUT_MILLIS + " ms");
+                skipped++;
+                return;
+            }
+            if (!before.get().equals(after.get())) {
+                System.out.println(label + ": DIFFERENT for arguments " +
+                        describe(arguments(originalMethod, seed, INPUT_SIZE)) +
+                        "\n  original:  " + before.get() + "\n  rewritten: " + after.get());
+                different++;
+                verified++;
+                return;
+            }
+        }
+        verified++;
+
+        String speed;
+        try {
+            speed = benchmark(originalMethod, rewrittenMethod, label.hashCode());
+        } catch (ExecutionException | TimeoutException e) {
+            speed = "not timed, " + (e instanceof TimeoutException ? "too slow" : "it throws for larger inputs");
+            runner.shutdownNow();
+            runner = newRunner();
+        }
+        System.out.println(label + ": same for " + inputs + " inputs, " + speed);
+    }
+
+    private static Method find(ClassLoader loader, String name, MethodDeclaration declaration)
+            throws ReflectiveOperationException {
+        int dot = name.lastIndexOf('.');
+        Class<?> type = Class.forName(name.substring(0, dot), true, loader);
+        String parameters = parameterTypes(declaration);
+        for (Method method : type.getDeclaredMethods()) {
+            String erased = Arrays.stream(method.getParameterTypes()).map(Class::getSimpleName)
+                    .collect(Collectors.joining(",", "(", ")"));
+            if (method.getName().equals(name.substring(dot + 1)) && erased.equals(parameters) && !method.isBridge()) {
+                method.setAccessible(true);
+                return method;
+            }
+        }
+        throw new NoSuchMethodException(name + parameters);
+    }
+
+    private static boolean hasNoArgumentConstructor(Method method) {
+        Class<?> type = method.getDeclaringClass();
+        if (Modifier.isAbstract(type.getModifiers()) ||
+                type.isMemberClass() && !Modifier.isStatic(type.getModifiers())) {
+            return false;
+        }
+        try {
+            type.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Object instance(Method method) throws ReflectiveOperationException {
+        if (Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+        Constructor<?> constructor = method.getDeclaringClass().getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    // ---- compiling
+
+    private Optional<ClassLoader> compile(Path file, List<String> errors) throws IOException {
+        errors.clear();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standard =
+                compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8);
+        List<java.io.File> libraries = classpath.stream().map(Path::toFile).collect(Collectors.toList());
+        // other sources the file needs come from the source roots; the file itself is given explicitly, so the
+        // rewritten version wins over the original below the root
+        List<java.io.File> sources = new ArrayList<>();
+        sources.add(root.toFile());
+        classpath.stream().filter(Files::isDirectory).map(Path::toFile).forEach(sources::add);
+        standard.setLocation(StandardLocation.CLASS_PATH, libraries);
+        standard.setLocation(StandardLocation.SOURCE_PATH, sources);
+
+        MemoryFileManager fileManager = new MemoryFileManager(standard);
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                Arrays.asList("-proc:none", "-nowarn", "-g"), null, standard.getJavaFileObjects(file.toFile()));
+        boolean success = task.call();
+        standard.close();
+        if (!success) {
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.add(diagnostic.getSource() + ":" + diagnostic.getLineNumber() + ": " +
+                            diagnostic.getMessage(Locale.ROOT));
+                }
+            }
+            return Optional.empty();
+        }
+
+        URL[] urls = new URL[libraries.size()];
+        for (int i = 0; i < urls.length; i++) {
+            try {
+                urls[i] = libraries.get(i).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IOException(e);
+            }
+        }
+        ClassLoader dependencies = new URLClassLoader(urls, RewriteVerifier.class.getClassLoader());
+        return Optional.of(new MemoryClassLoader(fileManager.classes, dependencies));
+    }
+
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        final Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+
+        MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            URI uri = URI.create("memory:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    classes.put(className, bytes);
+                    return bytes;
+                }
+            };
+        }
+    }
+
+    private static class MemoryClassLoader extends ClassLoader {
+        private final Map<String, ByteArrayOutputStream> classes;
+
+        MemoryClassLoader(Map<String, ByteArrayOutputStream> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        // ours first: the classpath may have compiled versions of the same classes
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null && classes.containsKey(name)) {
+                    byte[] bytes = classes.get(name).toByteArray();
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (loaded == null) {
+                    return super.loadClass(name, resolve);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+
+    // ---- running
+
+    private static ExecutorService newRunner() {
+        // daemon, so a call that never returns doesn't keep the JVM alive
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(null, runnable, "verifier", SourceRootAnalyzer.STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * What a call did that anybody could see.
+     */
+    private static class Outcome {
+        final String result;
+        final String printed;
+        final String arguments;
+        final String instance;
+
+        Outcome(String result, String printed, String arguments, String instance) {
+            this.result = result;
+            this.printed = printed;
+            this.arguments = arguments;
+            this.instance = instance;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Outcome)) {
+                return false;
+            }
+            Outcome other = (Outcome) o;
+            return result.equals(other.result) && printed.equals(other.printed) &&
+                    arguments.equals(other.arguments) && instance.equals(other.instance);
+        }
+
+        @Override
+        public int hashCode() {
+            return result.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return result + (printed.isEmpty() ? "" : ", printed " + describe(printed)) +
+                    ", arguments after " + arguments + (instance.isEmpty() ? "" : ", fields after " + instance);
+        }
+    }
+
+    // empty if the call didn't return in time
+    private Optional<Outcome> call(Method method, Object[] arguments) {
+        Future<Outcome> future = runner.submit(() -> {
+            ByteArrayOutputStream printed = new ByteArrayOutputStream();
+            PrintStream out = System.out;
+            String result;
+            Object instance = null;
+            System.setOut(new PrintStream(printed, true, "UTF-8"));
+            try {
+                instance = instance(method);
+                result = "returned " + describe(method.invoke(instance, arguments));
+            } catch (InvocationTargetException e) {
+                result = "threw " + e.getCause().getClass().getName();
+            } finally {
+                System.setOut(out);
+            }
+            return new Outcome(result, new String(printed.toByteArray(), StandardCharsets.UTF_8), describe(arguments),
+                    fields(instance));
+        });
+        try {
+            return Optional.of(future.get(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            runner.shutdownNow();
+            runner = newRunner();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            // something went wrong before or after the call itself
+            return Optional.of(new Outcome("failed with " + e.getCause(), "", "", ""));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    private static String fields(Object instance) {
+        if (instance == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Field field : instance.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            field.setAccessible(true);
+            try {
+                sb.append(field.getName()).append('=').append(describe(field.get(instance))).append(' ');
+            } catch (IllegalAccessException e) {
+                sb.append(field.getName()).append("=? ");
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    // arrays by contents, and without identity hash codes, which differ between any two runs
+    static String describe(Object value) {
+        String described;
+        if (value instanceof Object[]) {
+            described = Arrays.deepToString((Object[]) value);
+        } else if (value != null && value.getClass().isArray()) {
+            described = Arrays.deepToString(new Object[]{value});
+            described = described.substring(1, described.length() - 1);
+        } else if (value instanceof String) {
+            described = '"' + (String) value + '"';
+        } else {
+            described = String.valueOf(value);
+        }
+        return described.replaceAll("@[0-9a-f]{1,8}\\b", "@");
+    }
+
+    // ---- inputs
+
+    /**
+     * Makes up arguments for the method from the seed, or returns null if it has a parameter we can't make up
+     * values for. The same seed always gives equal arguments.
+     *
+     * @param size the most elements in a list or array; inputs to check behavior get fewer, at random
+     */
+    static Object[] arguments(Method method, long seed, int size) {
+        Random random = new Random(seed);
+        java.lang.reflect.Type[] types = method.getGenericParameterTypes();
+        Object[] arguments = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            arguments[i] = generate(types[i], random, size == BENCHMARK_SIZE ? size : random.nextInt(size + 1));
+            if (arguments[i] == UNSUPPORTED) {
+                return null;
+            }
+        }
+        return arguments;
+    }
+
+    // small values, so equal elements and zeros come up
+    private static Object generate(java.lang.reflect.Type type, Random random, int length) {
+        if (type == int.class || type == Integer.class) {
+            return (int) integer(random, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        } else if (type == long.class || type == Long.class) {
+            return integer(random, Long.MIN_VALUE, Long.MAX_VALUE);
+        } else if (type == double.class || type == Double.class) {
+            return (random.nextInt(21) - 10) / 2.0;
+        } else if (type == float.class || type == Float.class) {
+            return (random.nextInt(21) - 10) / 2.0f;
+        } else if (type == short.class || type == Short.class) {
+            return (short) (random.nextInt(21) - 10);
+        } else if (type == byte.class || type == Byte.class) {
+            return (byte) (random.nextInt(21) - 10);
+        } else if (type == char.class || type == Character.class) {
+            return (char) ('a' + random.nextInt(3));
+        } else if (type == boolean.class || type == Boolean.class) {
+            return random.nextBoolean();
+        } else if (type == String.class || type == CharSequence.class || type == Object.class) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                sb.append((char) ('a' + random.nextInt(3)));
+            }
+            return sb.toString();
+        } else if (type instanceof Class && ((Class<?>) type).isArray()) {
+            Class<?> component = ((Class<?>) type).getComponentType();
+            Object array = Array.newInstance(component, length);
+            for (int i = 0; i < length; i++) {
+                Object element = generate(component, random, length);
+                if (element == UNSUPPORTED) {
+                    return UNSUPPORTED;
+                }
+                Array.set(array, i, element);
+            }
+            return array;
+        } else if (isList(type)) {
+            java.lang.reflect.Type elementType = type instanceof ParameterizedType ?
+                    ((ParameterizedType) type).getActualTypeArguments()[0] : String.class;
+            if (elementType instanceof WildcardType) {
+                elementType = ((WildcardType) elementType).getUpperBounds()[0];
+            } else if (elementType instanceof TypeVariable) {
+                elementType = String.class;
+            }
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                Object element = generate(elementType, random, length);
+                if (element == UNSUPPORTED) {
+                    return UNSUPPORTED;
+                }
+                list.add(element);
+            }
+            return list;
+        }
+        return UNSUPPORTED;
+    }
+
+    // mostly small values as well, but now and then one outside the cache of boxed values, so a rewrite that
+    // compares boxes instead of values shows, or one at the end of the range, so a different overflow does
+    private static long integer(Random random, long min, long max) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return random.nextBoolean() ? 1000 : -1000;
+            case 1:
+                return random.nextBoolean() ? min : max;
+            default:
+                return random.nextInt(21) - 10;
+        }
+    }
+
+    private static boolean isList(java.lang.reflect.Type type) {
+        java.lang.reflect.Type raw = type instanceof ParameterizedType ? ((ParameterizedType) type).getRawType() : type;
+        return raw == List.class || raw == ArrayList.class || raw == Collection.class || raw == Iterable.class;
+    }
+
+    // ---- timing
+
+    private String benchmark(Method original, Method rewritten, long seed)
+            throws ExecutionException, TimeoutException {
+        Future<String> future = runner.submit(() -> {
+            Object[] originalArguments = arguments(original, seed, BENCHMARK_SIZE);
+            Object[] rewrittenArguments = arguments(rewritten, seed, BENCHMARK_SIZE);
+            Object originalInstance = instance(original);
+            Object rewrittenInstance = instance(rewritten);
+
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(new ByteArrayOutputStream() {
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    // dropped, not kept
+                }
+            }));
+            double[] before = new double[ROUNDS];
+            double[] after = new double[ROUNDS];
+            try {
+                // alternating, so both see the same JIT and GC conditions
+                for (int round = -WARMUP_ROUNDS; round < ROUNDS; round++) {
+                    double originalNanos = time(original, originalInstance, originalArguments);
+                    double rewrittenNanos = time(rewritten, rewrittenInstance, rewrittenArguments);
+                    if (round >= 0) {
+                        before[round] = originalNanos;
+                        after[round] = rewrittenNanos;
+                    }
+                }
+            } finally {
+                System.setOut(out);
+            }
+            double originalMedian = median(before);
+            double rewrittenMedian = median(after);
+            return String.format(Locale.ROOT, "%.2fx as fast on %d elements (%.0f ns -> %.0f ns per call)",
+                    originalMedian / rewrittenMedian, BENCHMARK_SIZE, originalMedian, rewrittenMedian);
+        });
+        try {
+            return future.get(CALL_TIMEOUT_MILLIS * 6, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("interrupted");
+        }
+    }
+
+    // nanoseconds per call over one round
+    private static double time(Method method, Object instance, Object[] arguments) throws ReflectiveOperationException {
+        long start = System.nanoTime();
+        long calls = 0;
+        long elapsed;
+        int hash = 0;
+        do {
+            Object result = method.invoke(instance, arguments);
+            hash += result == null ? 0 : System.identityHashCode(result);
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+        sink += hash;
+        return (double) elapsed / calls;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
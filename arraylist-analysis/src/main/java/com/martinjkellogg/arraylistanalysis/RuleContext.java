@@ -0,0 +1,66 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.stmt.BlockStmt;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * What the rules running over one file share, so they don't each index blocks, resolve types or pick names on
+ * their own.
+ */
+public class RuleContext {
+
+    private final TypeResolutionCache types;
+    private final AnalysisMetrics metrics;
+    // built lazily, the first time a rule asks about a block. Nodes compare structurally, so by identity.
+    private final Map<BlockStmt, DefUseIndex> indexes = new IdentityHashMap<>();
+    private final LocalNames names = new LocalNames();
+
+    RuleContext(TypeResolutionCache types, AnalysisMetrics metrics) {
+        this.types = types;
+        this.metrics = metrics;
+    }
+
+    /** Type resolution, cached across files. */
+    public TypeResolutionCache getTypes() {
+        return types;
+    }
+
+    /** Where rules count what they rejected and why. */
+    public AnalysisMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Tells the other rules that the code around the node changed. Rules that add or remove declarations,
+     * assignments or method calls have to call this after rewriting; rewriting a loop into another loop over the
+     * same statements doesn't.
+     */
+    public void changed(Node node) {
+        for (Node block = node; block != null; block = block.getParentNode().orElse(null)) {
+            if (block instanceof BlockStmt) {
+                DefUseIndex stale = indexes.get(block);
+                if (stale != null) {
+                    indexes.values().removeIf(index -> index == stale);
+                }
+                return;
+            }
+        }
+    }
+
+    /** The declarations and uses in the block and around it, see {@link DefUseIndex#of}. */
+    DefUseIndex index(BlockStmt block) {
+        return DefUseIndex.of(block, indexes);
+    }
+
+    Map<BlockStmt, DefUseIndex> getIndexes() {
+        return indexes;
+    }
+
+    /** Names for new variables, unique in their method across every rule. */
+    LocalNames getNames() {
+        return names;
+    }
+}
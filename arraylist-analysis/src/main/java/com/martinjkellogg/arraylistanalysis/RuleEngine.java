@@ -0,0 +1,92 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Runs a set of {@link RewriteRule}s over a file in a single walk, instead of one walk (and one round of
+ * indexing and type resolution) per rule.
+ *
+ * The walk offers the children of every node to the rules: top-down rules when the walk enters the node,
+ * bottom-up rules when it leaves it. A node goes to the rules in the order they were given, and the first one
+ * that rewrites it wins. An engine doesn't change, so one can be shared by every thread.
+ */
+public class RuleEngine {
+
+    private final List<RewriteRule<?>> topDown = new ArrayList<>();
+    private final List<RewriteRule<?>> bottomUp = new ArrayList<>();
+
+    public RuleEngine(List<? extends RewriteRule<?>> rules) {
+        for (RewriteRule<?> rule : rules) {
+            (rule.isBottomUp() ? bottomUp : topDown).add(rule);
+        }
+    }
+
+    /**
+     * @return the number of nodes that were rewritten
+     */
+    public int transform(CompilationUnit cu, TypeResolutionCache types, AnalysisMetrics metrics) {
+        RuleContext context = new RuleContext(types, metrics);
+        int[] rewritten = {0};
+
+        int depth = Traversal.walk(cu,
+                (node, unused) -> {
+                    // a file out of its budget (see FileBudget) stops at the next node
+                    FileBudget.check("analyzing");
+                    rewritten[0] += offer(node, topDown, context);
+                },
+                (node, unused) -> rewritten[0] += offer(node, bottomUp, context));
+        metrics.nestingDepth(depth);
+
+        return rewritten[0];
+    }
+
+    private static int offer(Node parent, List<RewriteRule<?>> rules, RuleContext context) {
+        // collected first, since rules replace children as we go. Most nodes have none.
+        List<Node> candidates = null;
+        for (Node child : parent.getChildNodes()) {
+            for (RewriteRule<?> rule : rules) {
+                if (rule.matches(child)) {
+                    if (candidates == null) {
+                        candidates = new ArrayList<>();
+                    }
+                    candidates.add(child);
+                    break;
+                }
+            }
+        }
+        if (candidates == null) {
+            return 0;
+        }
+
+        int rewritten = 0;
+        for (Node child : candidates) {
+            // an earlier rewrite in the same parent may have replaced it already
+            if (child.getParentNode().orElse(null) != parent) {
+                continue;
+            }
+            for (RewriteRule<?> rule : rules) {
+                if (rule.matches(child) && apply(rule, child, context)) {
+                    rewritten++;
+                    break;
+                }
+            }
+        }
+        return rewritten;
+    }
+
+    private static <F> boolean apply(RewriteRule<F> rule, Node node, RuleContext context) {
+        Optional<F> findings = rule.check(node, context);
+        if (!findings.isPresent()) {
+            return false;
+        }
+        try (AnalysisMetrics.Span span = context.getMetrics().time(AnalysisMetrics.Phase.REWRITE)) {
+            rule.rewrite(node, findings.get(), context);
+        }
+        return true;
+    }
+}
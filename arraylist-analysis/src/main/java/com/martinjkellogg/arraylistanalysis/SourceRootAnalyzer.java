@@ -0,0 +1,578 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.printer.PrettyPrinter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the analysis over every Java file below a source root, optionally on several threads.
+ *
+ * Files don't depend on each other (we resolve against the JDK, the classpath and at most the declarations of the
+ * other files, never against what's being rewritten), so each one is parsed, rewritten and saved on its own. The
+ * symbol solver is the expensive, cache-heavy part and isn't thread safe, so instead of sharing one behind a lock
+ * every worker thread gets its own parser and symbol solver.
+ */
+public class SourceRootAnalyzer {
+
+    /**
+     * The stack size of the threads that analyze files. Our own traversals don't recurse, but JavaParser's parser,
+     * printer and symbol solver do, once or more per level of nesting, and generated code nests deeper than a
+     * default stack allows. Stack memory is only committed as it's used.
+     */
+    static final long STACK_SIZE = 256L * 1024 * 1024;
+
+    private final Path root;
+    private final Path output;
+    private final int threads;
+    private ResultCache cache;
+    private boolean lexicalPreserving = false;
+    private boolean hoistSize = false;
+    private boolean primitiveLists = false;
+    private boolean presize = false;
+    private boolean replaceLinkedLists = false;
+    private long fileTimeoutMillis = 0;
+    private int maxNodes = 0;
+    private ClasspathIndex classpath;
+    private DeclarationIndex declarations;
+    private ExecutionProfile profile;
+    private long hotSamples;
+    private final List<RewriteRule<?>> extraRules = new ArrayList<>();
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+    private final TypeResolutionCache types =
+            new TypeResolutionCache(TypeResolutionCache.DEFAULT_MAXIMUM_SIZE, metrics);
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger seen = new AtomicInteger();
+    private final AtomicInteger overBudget = new AtomicInteger();
+
+    private final ThreadLocal<JavaParser> parsers = ThreadLocal.withInitial(() ->
+            new JavaParser(ArrayListAnalyzer.newParserConfiguration(classpath, declarations)));
+
+    public SourceRootAnalyzer(Path root, Path output, int threads) {
+        this.root = root;
+        this.output = output;
+        this.threads = threads;
+    }
+
+    /**
+     * @param cache results of earlier runs, or null to analyze every file from scratch
+     */
+    public SourceRootAnalyzer setCache(ResultCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Print rewritten files by splicing the new loops into the original text, so everything else keeps its
+     * formatting, instead of pretty printing them.
+     */
+    public SourceRootAnalyzer setLexicalPreserving(boolean lexicalPreserving) {
+        this.lexicalPreserving = lexicalPreserving;
+        return this;
+    }
+
+    /**
+     * See {@link ArrayListAnalyzer#transform(CompilationUnit, TypeResolutionCache, boolean)}.
+     */
+    public SourceRootAnalyzer setHoistSize(boolean hoistSize) {
+        this.hoistSize = hoistSize;
+        return this;
+    }
+
+    /**
+     * Replace local lists of Integer, Long or Double with primitive arrays where that's safe, before rewriting loops.
+     */
+    public SourceRootAnalyzer setPrimitiveLists(boolean primitiveLists) {
+        this.primitiveLists = primitiveLists;
+        return this;
+    }
+
+    /**
+     * Give new ArrayLists an initial capacity where there's a bound on how many elements are added to them, see
+     * {@link PresizedLists}.
+     */
+    public SourceRootAnalyzer setPresize(boolean presize) {
+        this.presize = presize;
+        return this;
+    }
+
+    /**
+     * Replace local LinkedLists with an ArrayList or ArrayDeque where that's safe, before rewriting loops, see
+     * {@link LinkedLists}.
+     */
+    public SourceRootAnalyzer setReplaceLinkedLists(boolean replaceLinkedLists) {
+        this.replaceLinkedLists = replaceLinkedLists;
+        return this;
+    }
+
+    /**
+     * Give up on files that take longer or are larger than this, and report them, instead of letting a few
+     * pathological ones hold up a thread for minutes. Files over budget aren't cached, so a later run with a
+     * larger budget analyzes them. See {@link FileBudget}.
+     *
+     * @param fileTimeoutMillis wall time per file, from reading it to the end of the analysis, or 0 for no limit
+     * @param maxNodes nodes in the parsed file, or 0 for no limit
+     */
+    public SourceRootAnalyzer setBudget(long fileTimeoutMillis, int maxNodes) {
+        this.fileTimeoutMillis = fileTimeoutMillis;
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    /**
+     * Only rewrite loops in methods that have at least the given number of samples in the profile. Cached results
+     * don't know about the profile, so it has to be part of the fingerprint the cache was opened with.
+     *
+     * @param profile where the program spends its time, or null to rewrite loops anywhere
+     */
+    public SourceRootAnalyzer setProfile(ExecutionProfile profile, long hotSamples) {
+        this.profile = profile;
+        this.hotSamples = hotSamples;
+        return this;
+    }
+
+    /**
+     * Runs another rule in the same walk as the built-in ones, after them. Cached results don't know about it,
+     * so it has to be part of the fingerprint the cache was opened with.
+     */
+    public SourceRootAnalyzer addRule(RewriteRule<?> rule) {
+        extraRules.add(rule);
+        return this;
+    }
+
+    /**
+     * Resolve project types from the given classpath as well as from the JDK. Has to be set before the first
+     * file is analyzed.
+     *
+     * @param classpath the index of the classpath, or null to only resolve JDK types
+     */
+    public SourceRootAnalyzer setClasspath(ClasspathIndex classpath) {
+        this.classpath = classpath;
+        return this;
+    }
+
+    /**
+     * Resolve the types declared in the source roots from the stubs in the given index. Has to be set before the
+     * first file is analyzed, and cached results don't know about it, so its fingerprint has to be part of the
+     * one the cache was opened with.
+     *
+     * @param declarations the index of the declarations, or null to not resolve against the sources
+     */
+    public SourceRootAnalyzer setDeclarations(DeclarationIndex declarations) {
+        this.declarations = declarations;
+        return this;
+    }
+
+    /**
+     * Analyzes every file below the root and writes the ones that had loops replaced to the output directory,
+     * keeping the directory layout. Files we didn't change aren't written at all, and what an earlier run wrote
+     * for them is removed. The output doesn't depend on the number of threads.
+     *
+     * Files are found while they're analyzed, and each one's tree is dropped as soon as it's written, so memory
+     * use depends on the largest file and the number of threads, not on the size of the tree.
+     *
+     * @return the number of loops (and lists) that were replaced
+     */
+    public int analyzeAll() throws IOException {
+        int replaced;
+        try (Stream<Path> files = walkSourceFiles()) {
+            replaced = analyzeFiles(files);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        report(replaced, System.out::println);
+        return replaced;
+    }
+
+    /**
+     * Same as {@link #analyzeAll()}, but only for the given files, which have to be below the root, and without
+     * printing anything (see {@link #report}). With one thread, files are analyzed on the calling thread, see
+     * {@link #runWithLargeStack}.
+     *
+     * @return the number of loops (and lists) that were replaced
+     */
+    public int analyzeFiles(Stream<Path> files) throws IOException {
+        return threads == 1 ? files.mapToInt(this::analyzeFile).sum() : analyzeInParallel(files);
+    }
+
+    /**
+     * Saves the result cache, and sends a summary of the files analyzed so far to the log: what was rewritten,
+     * how well the caches did, and where the time went.
+     *
+     * @param replaced what analyzeFiles returned
+     */
+    public void report(int replaced, Consumer<String> log) throws IOException {
+        String what = primitiveLists || presize || replaceLinkedLists ? " loops and lists" : " loops";
+        String overBudgetFiles = overBudget.get() > 0 ? " and " + overBudget + " over budget" : "";
+        log.accept("Replaced " + replaced + what + " in " + seen + " files using " + threads + " thread(s), " +
+                "skipped " + skipped + " without candidates" + overBudgetFiles + ", wrote " + written + " files");
+        log.accept(types.toString());
+        if (classpath != null) {
+            log.accept(classpath.toString());
+        }
+        if (declarations != null) {
+            log.accept(declarations.toString());
+        }
+        if (profile != null) {
+            log.accept(profile.toString());
+        }
+        log.accept(metrics.toString());
+        if (cache != null) {
+            cache.save();
+            log.accept("Result cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        }
+    }
+
+    // The walk runs on the calling thread and hands files to the workers, but never more than a few per worker
+    // at a time, so a slow disk or a huge tree can't pile up a queue of pending files.
+    private int analyzeInParallel(Stream<Path> files) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, analysisThreads("analyzer"));
+        Semaphore window = new Semaphore(2 * threads);
+        AtomicInteger replaced = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        try {
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext() && failure.get() == null) {
+                Path file = iterator.next();
+                window.acquire();
+                pool.execute(() -> {
+                    try {
+                        replaced.addAndGet(analyzeFile(file));
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        window.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while analyzing " + root, e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return replaced.get();
+    }
+
+    /**
+     * Something to run with {@link #runWithLargeStack}.
+     */
+    public interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs the task on a new thread with a {@link #STACK_SIZE} stack, waits for it, and rethrows whatever it
+     * threw. For callers that analyze files on their own thread (as a single threaded analyzer does) and can't
+     * choose its stack size.
+     */
+    public static void runWithLargeStack(String name, Task task) throws IOException {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException | Error e) {
+                failure[0] = e;
+            }
+        }, name, STACK_SIZE);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while analyzing", e);
+        }
+
+        if (failure[0] instanceof IOException) {
+            throw (IOException) failure[0];
+        } else if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        } else if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+    }
+
+    /**
+     * Creates threads with a {@link #STACK_SIZE} stack.
+     */
+    static ThreadFactory analysisThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(null, runnable, name + "-" + count.incrementAndGet(), STACK_SIZE);
+    }
+
+    /**
+     * Timings and rejected loops of the files analyzed so far.
+     */
+    public AnalysisMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Finds the Java files below the root, in a fixed order. Hidden directories (.git and friends) are skipped.
+     * This keeps every path in memory; {@link #analyzeAll()} walks the tree as it goes instead.
+     */
+    public List<Path> findSourceFiles() throws IOException {
+        try (Stream<Path> paths = walkSourceFiles()) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+
+    // lazily, in the order of the file system; has to be closed
+    private Stream<Path> walkSourceFiles() throws IOException {
+        return Files.walk(root)
+                .filter(path -> path.toString().endsWith(".java"))
+                .filter(Files::isRegularFile)
+                .filter(path -> !isInHiddenDirectory(root.relativize(path)));
+    }
+
+    private static boolean isInHiddenDirectory(Path relative) {
+        for (int i = 0; i < relative.getNameCount() - 1; i++) {
+            if (relative.getName(i).toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses and rewrites a single file using the calling thread's parser, and saves it if anything was replaced.
+     * Files that can't contain candidates (see {@link CandidateFilter}) aren't parsed at all, and if the cache
+     * already has a result for the file's contents, that is used instead.
+     *
+     * @return the number of loops (and lists) that were replaced
+     */
+    int analyzeFile(Path file) {
+        seen.incrementAndGet();
+        try {
+            return analyzeFile(file, root.relativize(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int analyzeFile(Path file, Path relative) throws IOException {
+        long start = System.nanoTime();
+        Path target = output.resolve(relative);
+        int[] replaced = {0};
+        try {
+            if (!withinBudget(file.toString(), start, () -> replaced[0] = analyzeFile(file, relative, target, start))) {
+                // the tree may be half rewritten, so none of it is saved, or cached
+                removeStale(file, target);
+                return done(relative, start, 0, "overBudget");
+            }
+            return replaced[0];
+        } catch (StackOverflowError e) {
+            // nested deeper than even STACK_SIZE allows; the tree is garbage by now, and the next file may be fine
+            System.err.println("Skipping " + file + ": nested too deeply to parse or print");
+            removeStale(file, target);
+            return done(relative, start, 0, "failed");
+        }
+    }
+
+    /**
+     * Runs a task that parses and analyzes a file within the budget set with {@link #setBudget}. A file that
+     * runs out of it is reported and counted, and whatever the task did to its tree should be dropped.
+     *
+     * @param name the file, for the report
+     * @param start when work on the file started, in {@link System#nanoTime()}
+     * @return false if the file ran out of its budget
+     */
+    boolean withinBudget(String name, long start, Task task) throws IOException {
+        FileBudget.start(fileTimeoutMillis, maxNodes, start);
+        try {
+            task.run();
+            return true;
+        } catch (FileBudget.Exceeded e) {
+            System.err.println("Skipping " + name + ": over its budget, " + e.getMessage());
+            overBudget.incrementAndGet();
+            return false;
+        } finally {
+            FileBudget.end();
+        }
+    }
+
+    private int analyzeFile(Path file, Path relative, Path target, long start) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+
+        if (!CandidateFilter.mayContainCandidates(content, primitiveLists || presize, replaceLinkedLists)) {
+            skipped.incrementAndGet();
+            removeStale(file, target);
+            return done(relative, start, 0, "skipped");
+        }
+
+        String key = null;
+        if (cache != null) {
+            key = cache.key(content);
+            ResultCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.SAVE)) {
+                    if (!entry.hasOutput()) {
+                        removeStale(file, target);
+                    } else if (cache.restore(entry, target)) {
+                        written.incrementAndGet();
+                    }
+                }
+                return done(relative, start, entry.getReplaced(), "cached");
+            }
+        }
+
+        Optional<CompilationUnit> parsed = parse(file.toString(), content);
+        if (!parsed.isPresent()) {
+            removeStale(file, target);
+            return done(relative, start, 0, "failed");
+        }
+
+        CompilationUnit cu = parsed.get();
+        int replaced;
+        try {
+            replaced = transform(cu);
+        } catch (FileBudget.Exceeded e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // usually a symbol we can't resolve; one odd file shouldn't take the whole run down
+            System.err.println("Skipping " + file + ": " + e);
+            removeStale(file, target);
+            return done(relative, start, 0, "failed");
+        }
+
+        if (replaced == 0) {
+            // printing is one of the most expensive steps, and there's nothing new to print
+            if (cache != null) {
+                cache.put(key, 0, null);
+            }
+            removeStale(file, target);
+            return done(relative, start, 0, "unchanged");
+        }
+
+        try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.SAVE)) {
+            String printed = print(cu, content);
+
+            cu.setStorage(target);
+            cu.getStorage().get().save(unused -> printed);
+            written.incrementAndGet();
+
+            if (cache != null) {
+                cache.put(key, replaced, printed);
+            }
+        }
+
+        return done(relative, start, replaced, "rewritten");
+    }
+
+    // a file an earlier run wrote for this one would be taken for this run's result. The output can be the root
+    // itself, when rewriting in place, and then the target is the source.
+    private static void removeStale(Path file, Path target) throws IOException {
+        if (Files.exists(target) && !Files.isSameFile(file, target)) {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    private int done(Path relative, long start, int replaced, String outcome) {
+        metrics.fileAnalyzed(relative.toString(), System.nanoTime() - start, replaced, outcome);
+        return replaced;
+    }
+
+    /**
+     * Parses the contents of a file with the calling thread's parser. Problems are logged, with the given name.
+     * Within {@link #withinBudget}, a file out of time or with too many nodes throws {@link FileBudget.Exceeded}.
+     */
+    Optional<CompilationUnit> parse(String name, byte[] content) {
+        // SourceRoot reads files as UTF-8 as well
+        ParseResult<CompilationUnit> result;
+        try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.PARSE)) {
+            result = parsers.get().parse(FileBudget.checking(new ByteArrayInputStream(content)),
+                    StandardCharsets.UTF_8);
+        }
+
+        // the parser reports what it threw as a problem
+        FileBudget.check("parsing");
+        if (!result.isSuccessful() || !result.getResult().isPresent()) {
+            System.err.println("Skipping " + name + ": " + result.getProblems());
+            return Optional.empty();
+        }
+        FileBudget.checkNodes(result.getResult().get());
+        return result.getResult();
+    }
+
+    /**
+     * Runs the configured rewrites over the compilation unit, in one walk. Within {@link #withinBudget}, a file
+     * out of time throws {@link FileBudget.Exceeded}.
+     *
+     * @return the number of loops (and lists) that were replaced
+     */
+    int transform(CompilationUnit cu) {
+        // lists first: they rewrite loops over them more simply than the loop rule would
+        List<RewriteRule<?>> rules = new ArrayList<>();
+        if (primitiveLists) {
+            rules.add(new PrimitiveLists());
+        }
+        // before the loops the adds are in are rewritten, and after the lists that aren't ArrayLists any more
+        if (presize) {
+            rules.add(new PresizedLists());
+        }
+        if (replaceLinkedLists) {
+            rules.add(new LinkedLists());
+        }
+        rules.add(new IndexedLoopRule(hoistSize, profile, hotSamples));
+        rules.add(new IteratorLoopRule(hoistSize, profile, hotSamples));
+        rules.add(new ForEachCallRule(hoistSize, profile, hotSamples));
+        rules.addAll(extraRules);
+
+        int replaced;
+        try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.ANALYSIS)) {
+            replaced = new RuleEngine(rules).transform(cu, types, metrics);
+        }
+        // rules catch what doesn't resolve, and that may have been the budget running out
+        FileBudget.check("analyzing");
+        return replaced;
+    }
+
+    /**
+     * Prints a rewritten compilation unit the way the analyzer is configured to.
+     *
+     * @param content what the compilation unit was parsed from
+     */
+    String print(CompilationUnit cu, byte[] content) {
+        if (lexicalPreserving) {
+            return PreservingPrinter.print(cu, new String(content, StandardCharsets.UTF_8));
+        }
+        // the same printer SourceRoot.saveAll uses
+        return new PrettyPrinter().print(cu);
+    }
+
+    /**
+     * The type resolution cache shared by every file and thread (each thread keeps its own resolved types).
+     */
+    TypeResolutionCache getTypes() {
+        return types;
+    }
+}
@@ -0,0 +1,85 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.Node;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A depth-first walk that keeps its own stack instead of recursing, so it visits every node exactly once, however
+ * deeply the code is nested. Decompiled and generated code (see Blabla.java) nests if/else and do blocks
+ * deeper than a recursive visitor gets on a default thread stack.
+ *
+ * A node's children are read after the node has been entered, so a visitor may replace the children of the node
+ * it's entering, and the walk continues into the replacements. When a node is left, everything below it has been
+ * walked; replacing its children then is fine too, the replacements just aren't walked. Neither may change
+ * anything outside that node.
+ */
+class Traversal {
+
+    interface Visitor {
+        /**
+         * @param depth how many ancestors below the root the node has; the root is at depth 0
+         */
+        void visit(Node node, int depth);
+    }
+
+    private Traversal() {
+    }
+
+    /**
+     * Walks the root and everything below it, in the order of {@link Node#getChildNodes()}.
+     *
+     * @return the depth of the deepest node
+     */
+    static int preOrder(Node root, Visitor visitor) {
+        return walk(root, visitor, null);
+    }
+
+    /**
+     * Same as {@link #preOrder}, but also tells the visitor when the walk is done with a node.
+     *
+     * @param enter called before the node's children are walked
+     * @param leave called after them, or null
+     * @return the depth of the deepest node
+     */
+    static int walk(Node root, Visitor enter, Visitor leave) {
+        Node[] nodes = new Node[16];
+        // the depth of every node on the stack, or -(depth + 1) if it's there to be left rather than entered
+        int[] depths = new int[16];
+        int size = 0;
+        int maxDepth = 0;
+
+        nodes[size] = root;
+        depths[size++] = 0;
+        while (size > 0) {
+            Node node = nodes[--size];
+            int depth = depths[size];
+            nodes[size] = null;
+            if (depth < 0) {
+                leave.visit(node, -depth - 1);
+                continue;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+
+            enter.visit(node, depth);
+
+            List<Node> children = node.getChildNodes();
+            if (size + children.size() + 1 > nodes.length) {
+                int capacity = Math.max(2 * nodes.length, size + children.size() + 1);
+                nodes = Arrays.copyOf(nodes, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+            }
+            if (leave != null) {
+                nodes[size] = node;
+                depths[size++] = -depth - 1;
+            }
+            // pushed last to first, so they come off the stack in order
+            for (int i = children.size() - 1; i >= 0; i--) {
+                nodes[size] = children.get(i);
+                depths[size++] = depth + 1;
+            }
+        }
+        return maxDepth;
+    }
+}
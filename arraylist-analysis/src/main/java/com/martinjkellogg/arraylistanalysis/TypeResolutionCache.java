@@ -0,0 +1,415 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithStatements;
+import com.github.javaparser.ast.nodeTypes.NodeWithTypeParameters;
+import com.github.javaparser.ast.stmt.CatchClause;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.type.TypeParameter;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
+import com.github.javaparser.resolution.types.ResolvedReferenceType;
+import com.github.javaparser.resolution.types.ResolvedType;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes type resolution, so resolving the same declared type again costs a map lookup instead of a walk
+ * through the symbol solver. One instance is meant to be shared by every file (and thread) of a run, but the
+ * resolved types are cached per thread: they keep the type solver that resolved them and use it for everything
+ * asked of them later (ancestors, members), and a solver must only be used by the thread that owns it. Subtype
+ * checks only cache a boolean, so every thread shares those.
+ *
+ * A name is resolved through its declaration: if the name is a local variable or parameter with an explicit
+ * type, the result is cached under that type as written, together with everything in the file that could change
+ * what the type means (package, imports, enclosing type hierarchy). "ArrayList&lt;String&gt; list" in two
+ * methods of a file, or in two files with the same imports, is resolved once. Anything we can't key safely
+ * (fields, "var", lambda parameters without types, types mentioning type parameters or types declared in the
+ * file itself, names in scope of a local class) goes straight to the symbol solver.
+ *
+ * Both caches (each thread's types, and the subtype checks) evict the least recently used entry once they're
+ * full.
+ */
+public class TypeResolutionCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    // the import/package part of a key only depends on the file, so it's computed once and kept on the file
+    private static final DataKey<FileContext> FILE_CONTEXT = new DataKey<FileContext>() {
+    };
+
+    private final ThreadLocal<Map<String, ResolvedType>> types;
+    private final Map<String, Boolean> subtypes;
+    private final AnalysisMetrics metrics;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong uncacheable = new AtomicLong();
+    private final AtomicLong subtypeHits = new AtomicLong();
+    private final AtomicLong subtypeMisses = new AtomicLong();
+
+    public TypeResolutionCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public TypeResolutionCache(int maximumSize) {
+        this(maximumSize, AnalysisMetrics.disabled());
+    }
+
+    /**
+     * @param metrics where to record the time spent in the symbol solver
+     */
+    public TypeResolutionCache(int maximumSize, AnalysisMetrics metrics) {
+        this.types = ThreadLocal.withInitial(() -> lruMap(maximumSize));
+        this.subtypes = Collections.synchronizedMap(lruMap(maximumSize));
+        this.metrics = metrics;
+    }
+
+    private static <V> Map<String, V> lruMap(int maximumSize) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Same as {@link Expression#calculateResolvedType()}, but cached where that's safe.
+     */
+    public ResolvedType calculateResolvedType(Expression expression) {
+        String key = expression.isNameExpr() ? key(expression.asNameExpr()) : null;
+        if (key == null) {
+            uncacheable.incrementAndGet();
+            return resolve(expression);
+        }
+
+        Map<String, ResolvedType> threadTypes = types.get();
+        ResolvedType type = threadTypes.get(key);
+        if (type != null) {
+            hits.incrementAndGet();
+            return type;
+        }
+
+        misses.incrementAndGet();
+        type = resolve(expression);
+        threadTypes.put(key, type);
+        return type;
+    }
+
+    /**
+     * Same as {@link NameExpr#resolve()}. Not cached, only here so the time it takes is recorded.
+     */
+    public ResolvedValueDeclaration resolveDeclaration(NameExpr name) {
+        FileBudget.check("resolving types");
+        try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.RESOLVE)) {
+            return name.resolve();
+        }
+    }
+
+    /**
+     * Same as {@link MethodCallExpr#resolve()}. Not cached either.
+     */
+    public ResolvedMethodDeclaration resolveMethod(MethodCallExpr call) {
+        FileBudget.check("resolving types");
+        try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.RESOLVE)) {
+            return call.resolve();
+        }
+    }
+
+    private ResolvedType resolve(Expression expression) {
+        FileBudget.check("resolving types");
+        try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.RESOLVE)) {
+            return expression.calculateResolvedType();
+        }
+    }
+
+    /**
+     * Whether the type is, or inherits from, the type with the given qualified name. Ancestors are computed by
+     * reflection for JDK types, so this is cached by the pair of names.
+     */
+    public boolean isSubtypeOf(ResolvedReferenceType type, String ancestorQualifiedName) {
+        if (ancestorQualifiedName.equals(type.getQualifiedName())) {
+            return true;
+        }
+
+        String key = type.getQualifiedName() + "<:" + ancestorQualifiedName;
+        Boolean result = subtypes.get(key);
+        if (result != null) {
+            subtypeHits.incrementAndGet();
+            return result;
+        }
+
+        subtypeMisses.incrementAndGet();
+        FileBudget.check("resolving types");
+        try (AnalysisMetrics.Span span = metrics.time(AnalysisMetrics.Phase.RESOLVE)) {
+            result = type.getAllAncestors().stream().anyMatch(a -> ancestorQualifiedName.equals(a.getQualifiedName()));
+        }
+        subtypes.put(key, result);
+        return result;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** How many resolutions bypassed the cache because they couldn't be keyed safely. */
+    public long getUncacheable() {
+        return uncacheable.get();
+    }
+
+    public long getSubtypeHits() {
+        return subtypeHits.get();
+    }
+
+    public long getSubtypeMisses() {
+        return subtypeMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Type resolution cache: " + hits + " hits, " + misses + " misses, " + uncacheable + " uncacheable; " +
+                "subtype checks: " + subtypeHits + " hits, " + subtypeMisses + " misses";
+    }
+
+    /**
+     * Builds the key for a name, or returns null if it can't be cached.
+     */
+    private static String key(NameExpr name) {
+        Optional<Type> declaredType = findDeclaredType(name);
+        if (!declaredType.isPresent()) {
+            return null;
+        }
+        Type type = declaredType.get();
+        if (type.isVarType() || type.isUnknownType()) {
+            return null;
+        }
+
+        Optional<CompilationUnit> cu = name.findCompilationUnit();
+        if (!cu.isPresent()) {
+            return null;
+        }
+        FileContext context = fileContext(cu.get());
+
+        // type parameters mean different things in different methods, and types declared in this file aren't
+        // something another file could share
+        Set<String> typeParameters = typeParametersInScope(name);
+        for (ClassOrInterfaceType mentioned : type.findAll(ClassOrInterfaceType.class)) {
+            String simpleName = mentioned.getNameAsString();
+            if (typeParameters.contains(simpleName) || context.declaredTypes.contains(simpleName)) {
+                return null;
+            }
+        }
+
+        // member types inherited from supertypes are in scope too, so the enclosing hierarchy is part of the key
+        StringBuilder key = new StringBuilder(context.key);
+        for (Node n = name; n != null; n = n.getParentNode().orElse(null)) {
+            if (n instanceof ClassOrInterfaceDeclaration) {
+                // asString, since toString would pretty print
+                ClassOrInterfaceDeclaration declaration = (ClassOrInterfaceDeclaration) n;
+                key.append("|extends");
+                for (ClassOrInterfaceType extended : declaration.getExtendedTypes()) {
+                    key.append(' ').append(extended.asString());
+                }
+                key.append(" implements");
+                for (ClassOrInterfaceType implemented : declaration.getImplementedTypes()) {
+                    key.append(' ').append(implemented.asString());
+                }
+            } else if (n instanceof TypeDeclaration) {
+                // enums, annotations: no extends clause to speak of
+                key.append("|").append(((TypeDeclaration<?>) n).getClass().getSimpleName());
+            }
+        }
+
+        return key.append("|").append(type.asString()).toString();
+    }
+
+    /**
+     * Finds the declared type of the local variable or parameter a name refers to, using Java's scoping rules
+     * for locals: the innermost earlier declaration in an enclosing block, loop header, catch clause, resource
+     * list, lambda or method wins, since locals can't shadow other locals. Stops at the enclosing type or
+     * anonymous class body, since beyond that the name could be a field.
+     */
+    private static Optional<Type> findDeclaredType(NameExpr name) {
+        String id = name.getNameAsString();
+        Node child = name;
+
+        for (Node parent = name.getParentNode().orElse(null); parent != null;
+             child = parent, parent = parent.getParentNode().orElse(null)) {
+
+            if (parent instanceof NodeWithStatements) {
+                for (Statement statement : ((NodeWithStatements<?>) parent).getStatements()) {
+                    if (statement == child) {
+                        break;
+                    }
+                    if (statement.isLocalClassDeclarationStmt()) {
+                        // could shadow any type name; not worth being clever about
+                        return Optional.empty();
+                    }
+                    if (statement.isExpressionStmt() &&
+                            statement.asExpressionStmt().getExpression().isVariableDeclarationExpr()) {
+                        VariableDeclarationExpr declaration =
+                                statement.asExpressionStmt().getExpression().asVariableDeclarationExpr();
+                        Optional<Type> found = find(declaration, id);
+                        if (found.isPresent()) {
+                            return found;
+                        }
+                    }
+                }
+            } else if (parent instanceof ForEachStmt) {
+                ForEachStmt forEachStmt = (ForEachStmt) parent;
+                // the loop variable isn't in scope in the iterable
+                if (child != forEachStmt.getIterable()) {
+                    Optional<Type> found = find(forEachStmt.getVariable(), id);
+                    if (found.isPresent()) {
+                        return found;
+                    }
+                }
+            } else if (parent instanceof ForStmt) {
+                for (Expression init : ((ForStmt) parent).getInitialization()) {
+                    if (init == child) {
+                        break;
+                    }
+                    if (init.isVariableDeclarationExpr()) {
+                        Optional<Type> found = find(init.asVariableDeclarationExpr(), id);
+                        if (found.isPresent()) {
+                            return found;
+                        }
+                    }
+                }
+            } else if (parent instanceof TryStmt) {
+                for (Expression resource : ((TryStmt) parent).getResources()) {
+                    if (resource == child) {
+                        break;
+                    }
+                    if (resource.isVariableDeclarationExpr()) {
+                        Optional<Type> found = find(resource.asVariableDeclarationExpr(), id);
+                        if (found.isPresent()) {
+                            return found;
+                        }
+                    }
+                }
+            } else if (parent instanceof CatchClause) {
+                Parameter parameter = ((CatchClause) parent).getParameter();
+                if (parameter.getNameAsString().equals(id)) {
+                    return Optional.of(parameter.getType());
+                }
+            } else if (parent instanceof LambdaExpr) {
+                for (Parameter parameter : ((LambdaExpr) parent).getParameters()) {
+                    if (parameter.getNameAsString().equals(id)) {
+                        return Optional.of(parameter.getType());
+                    }
+                }
+            } else if (parent instanceof CallableDeclaration) {
+                for (Parameter parameter : ((CallableDeclaration<?>) parent).getParameters()) {
+                    if (parameter.getNameAsString().equals(id)) {
+                        // "String... args" is an array
+                        return parameter.isVarArgs() ? Optional.empty() : Optional.of(parameter.getType());
+                    }
+                }
+            } else if (parent instanceof TypeDeclaration) {
+                return Optional.empty();
+            } else if (parent instanceof ObjectCreationExpr && child instanceof BodyDeclaration) {
+                // a member of an anonymous class, whose fields (and inherited ones) come first
+                return Optional.empty();
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static Optional<Type> find(VariableDeclarationExpr declarationExpr, String id) {
+        for (VariableDeclarator declarator : declarationExpr.getVariables()) {
+            if (declarator.getNameAsString().equals(id)) {
+                // getType includes array brackets written after the name
+                return Optional.of(declarator.getType());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Set<String> typeParametersInScope(Node node) {
+        Set<String> names = new HashSet<>();
+        for (Node n = node; n != null; n = n.getParentNode().orElse(null)) {
+            if (n instanceof NodeWithTypeParameters) {
+                for (TypeParameter typeParameter : ((NodeWithTypeParameters<?>) n).getTypeParameters()) {
+                    names.add(typeParameter.getNameAsString());
+                }
+            }
+        }
+        return names;
+    }
+
+    private static FileContext fileContext(CompilationUnit cu) {
+        if (cu.containsData(FILE_CONTEXT)) {
+            return cu.getData(FILE_CONTEXT);
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append("package ").append(cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse(""));
+        for (ImportDeclaration importDeclaration : cu.getImports()) {
+            key.append(";import ").append(importDeclaration.isStatic() ? "static " : "")
+                    .append(importDeclaration.getNameAsString()).append(importDeclaration.isAsterisk() ? ".*" : "");
+        }
+
+        // only member types; walking the whole file with findAll costs more than the resolutions we save.
+        // Local classes are caught by findDeclaredType instead.
+        Set<String> declaredTypes = new HashSet<>();
+        Deque<TypeDeclaration<?>> pending = new ArrayDeque<>(cu.getTypes());
+        while (!pending.isEmpty()) {
+            TypeDeclaration<?> typeDeclaration = pending.pop();
+            declaredTypes.add(typeDeclaration.getNameAsString());
+            for (BodyDeclaration<?> member : typeDeclaration.getMembers()) {
+                if (member instanceof TypeDeclaration) {
+                    pending.push((TypeDeclaration<?>) member);
+                }
+            }
+        }
+
+        FileContext context = new FileContext(key.toString(), declaredTypes);
+        cu.setData(FILE_CONTEXT, context);
+        return context;
+    }
+
+    private static class FileContext {
+        final String key;
+        final Set<String> declaredTypes;
+
+        FileContext(String key, Set<String> declaredTypes) {
+            this.key = key;
+            this.declaredTypes = declaredTypes;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+import java.util.*;
+
+class SimpleYesTransform {
+
+    public void doStuff() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        // should be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void callsSize() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should be transformed
+        for (String s : list) {
+            list.size();
+        }
+    }
+
+    public void doStuffNotAnArrayList() {
+        List<String> list = new LinkedList<>();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        // should not be transformed, unless --replace-linked-lists makes it an ArrayList first
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void doStuffNotAList() {
+        Set<String> list = new HashSet<>();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void doStuffWithValueFromOtherPlace1() {
+        List<String> list = getList();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void doStuffWithValueFromOtherPlace2(List<String> list) {
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void reassignList() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+        list = new LinkedList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void aliasList() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        List<String> alias = list;
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void aliasList2() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        List<String> alias;
+        alias = list;
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void aliasListViaCall() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+        list.add(" ");
+        list.add("world");
+        list.add("!");
+
+        list.size();
+
+        mightAliasList(list);
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void passedToReadOnlyCall() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+
+        System.out.println(list);
+        printAll(list);
+
+        // should be transformed: neither call keeps or changes the list
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void callsAdd() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            list.add(null);
+        }
+    }
+
+    public void callsAddAll() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            list.addAll(Collections.EMPTY_LIST);
+        }
+    }
+
+    public void callsRemove() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            list.remove(null);
+        }
+    }
+
+    public void callsRemoveAll() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            list.removeAll(Collections.EMPTY_LIST);
+        }
+    }
+
+    public void callsRemoveIf() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            list.removeIf(b -> false);
+        }
+    }
+
+    public void callsRemoveRange() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            list.removeRange(0, 0);
+        }
+    }
+
+    public void callsRetainAll() {
+        ArrayList<String> list = new ArrayList<>();
+
+        // should not be transformed
+        for (String s : list) {
+            list.retainAll(Collections.EMPTY_LIST);
+        }
+    }
+
+    public void addsThroughSubList() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+        List<String> sub = list.subList(0, 1);
+
+        // should not be transformed: the view adds to the list
+        for (String s : list) {
+            sub.add(s);
+        }
+    }
+
+    public void removesThroughIterator() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+        Iterator<String> it = list.iterator();
+
+        // should not be transformed: the iterator removes from the list
+        for (String s : list) {
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    public void linkedListAsQueue() {
+        // with --replace-linked-lists, should become an ArrayDeque: only used at its ends, never with null
+        Deque<String> queue = new LinkedList<>();
+        queue.offer("hello");
+        queue.push("wor" + "ld");
+
+        while (!queue.isEmpty()) {
+            System.out.print(queue.poll());
+        }
+    }
+
+    public void linkedListWithNullableInsert(String value) {
+        // should stay a LinkedList: an ArrayDeque throws on null
+        Deque<String> queue = new LinkedList<>();
+        queue.offer(value);
+
+        while (!queue.isEmpty()) {
+            System.out.print(queue.poll());
+        }
+    }
+
+    public void linkedListInsertAtIndex() {
+        // should stay a LinkedList: inserting at the head is what it's good at
+        List<String> list = new LinkedList<>();
+        list.add(0, "hello");
+        list.add(0, "world");
+
+        // should not be transformed
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    public void linkedListRemoveThroughIterator() {
+        // should stay a LinkedList: every remove would copy the rest of an ArrayList
+        List<String> list = new LinkedList<>();
+        list.add("hello");
+        list.add(" ");
+
+        for (Iterator<String> it = list.iterator(); it.hasNext(); ) {
+            if (it.next().isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    public int linkedListPassedOn() {
+        // should stay a LinkedList: count only takes one
+        LinkedList<String> list = new LinkedList<>();
+        list.add("hello");
+        return count(list);
+    }
+
+    private int count(LinkedList<String> list) {
+        return list.size();
+    }
+
+    public int primitiveList() {
+        // with --primitive-lists, should become an int array and a size: only ints are added and read
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            values.add(i * i);
+        }
+
+        int sum = 0;
+        // should be transformed
+        for (int value : values) {
+            sum += value;
+        }
+        return sum + values.get(0) + values.size();
+    }
+
+    public boolean primitiveListBoxedAgain(int value) {
+        // should stay a list: a and b are the same Integer, but boxing the array's int twice makes two
+        List<Integer> values = new ArrayList<>();
+        values.add(value);
+
+        Integer a = values.get(0);
+        Integer b = values.get(0);
+        return a == b;
+    }
+
+    public boolean primitiveListComparedWithEquals() {
+        // should stay a list: == compares the Integers, not their values
+        List<Integer> values = new ArrayList<>();
+        values.add(1000);
+        values.add(1000);
+
+        return values.get(0) == values.get(1);
+    }
+
+    public int primitiveListAddedToWhileIterated() {
+        // should stay a list: adding while iterating throws a ConcurrentModificationException
+        List<Integer> values = new ArrayList<>();
+        values.add(1);
+
+        int sum = 0;
+        // should not be transformed
+        for (Integer value : values) {
+            sum += value;
+            values.add(value);
+        }
+        return sum;
+    }
+
+    public int primitiveListWithNull(Integer boxed) {
+        // should stay a list: what's added may be null, which only throws once it's unboxed
+        List<Integer> values = new ArrayList<>();
+        values.add(boxed);
+
+        return values.size();
+    }
+
+    public void iteratorLoop() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+
+        // should be transformed
+        for (Iterator<String> it = list.iterator(); it.hasNext(); ) {
+            String s = it.next();
+            System.out.print(s);
+        }
+    }
+
+    public void iteratorLoopRemoves() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+
+        Iterator<String> it = list.iterator();
+        // should not be transformed: it.remove() changes the list
+        while (it.hasNext()) {
+            String s = it.next();
+            if (s.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    public void forEachCall() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+
+        // should be transformed
+        list.forEach(s -> System.out.print(s));
+    }
+
+    public void forEachCallAdds() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("hello");
+
+        // should not be transformed: forEach throws a ConcurrentModificationException once the list grows
+        list.forEach(s -> list.add(s));
+    }
+
+    public List<String> presizedCopy(List<String> names) {
+        // with --presize, should get a capacity of names.size() + 1
+        List<String> copy = new ArrayList<>();
+        // should not be transformed: names isn't local
+        for (String name : names) {
+            copy.add(name);
+        }
+        copy.add("!");
+        return copy;
+    }
+
+    public List<String> presizedUnbounded(Iterator<String> names) {
+        // should keep the default capacity: there's no telling how often a while loop adds
+        List<String> copy = new ArrayList<>();
+        while (names.hasNext()) {
+            copy.add(names.next());
+        }
+        return copy;
+    }
+
+    public void presizedPassedOn() {
+        // should keep the default capacity: the method it's passed to may add to it
+        List<String> list = new ArrayList<>();
+        list.add("hello");
+        mightAliasList(list);
+    }
+
+    private List getList() {
+        return new LinkedList();
+    }
+
+    private void mightAliasList(List list) {
+        aliased = list;
+    }
+
+    private void printAll(List<String> list) {
+        for (String s : list) {
+            System.out.print(s);
+        }
+    }
+
+    private List aliased;
+
+}
\ No newline at end of file
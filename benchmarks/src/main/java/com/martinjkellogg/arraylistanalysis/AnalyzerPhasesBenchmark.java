@@ -0,0 +1,185 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.printer.PrettyPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each phase of {@link ArrayListAnalyzer} separately: parsing, type resolution of the loop iterables,
+ * the locality and modification checks, the rewrite and printing, plus the whole transform for reference.
+ *
+ * Run with "-prof gc" to get the allocation rate of each phase as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalyzerPhasesBenchmark {
+
+    @Param({"SimpleYesTransform.java", "Blabla.java", "methods-1000", "nested-100"})
+    public String input;
+
+    private String source;
+    private JavaParser parser;
+    private CompilationUnit cu;
+    // every for-each directly inside a block whose iterable resolves, i.e. everything the checks look at
+    private List<ForEachStmt> loops;
+    // where those loops are in cu.findAll(ForEachStmt.class), to find them again in copies of the tree
+    private List<Integer> loopPositions;
+    private TypeResolutionCache types;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = BenchmarkInputs.load(input);
+        parser = new JavaParser(ArrayListAnalyzer.newParserConfiguration());
+        cu = parse();
+        loops = candidateLoops(cu);
+        List<ForEachStmt> all = cu.findAll(ForEachStmt.class);
+        loopPositions = new ArrayList<>();
+        for (ForEachStmt loop : loops) {
+            loopPositions.add(all.indexOf(loop));
+        }
+        types = new TypeResolutionCache();
+    }
+
+    /**
+     * A fresh tree, for the benchmarks that change it and for resolution, which the symbol solver memoizes per
+     * node. It's parsed again rather than cloned, since a clone doesn't get the symbol resolver.
+     */
+    @State(Scope.Thread)
+    public static class FreshTree {
+        CompilationUnit cu;
+        List<ForEachStmt> loops;
+
+        @Setup(Level.Invocation)
+        public void setUp(AnalyzerPhasesBenchmark benchmark) {
+            cu = benchmark.parse();
+            List<ForEachStmt> all = cu.findAll(ForEachStmt.class);
+            loops = new ArrayList<>();
+            for (int position : benchmark.loopPositions) {
+                loops.add(all.get(position));
+            }
+        }
+    }
+
+    /**
+     * A fresh tree and the loops in it that pass the checks.
+     */
+    @State(Scope.Thread)
+    public static class EligibleLoops {
+        CompilationUnit cu;
+        List<ForEachStmt> eligible;
+
+        @Setup(Level.Invocation)
+        public void setUp(AnalyzerPhasesBenchmark benchmark) {
+            cu = benchmark.parse();
+
+            eligible = new ArrayList<>();
+            IdentityHashMap<BlockStmt, DefUseIndex> indexes = new IdentityHashMap<>();
+            for (ForEachStmt loop : candidateLoops(cu)) {
+                if (ArrayListAnalyzer.isLocalArrayList(loop, block(loop), indexes, benchmark.types) &&
+                        !ArrayListAnalyzer.callsModificationMethods(loop)) {
+                    eligible.add(loop);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public CompilationUnit parse() {
+        return parser.parse(source).getResult().get();
+    }
+
+    @Benchmark
+    public void calculateResolvedType(FreshTree tree, Blackhole bh) {
+        for (ForEachStmt loop : tree.loops) {
+            bh.consume(loop.getIterable().calculateResolvedType());
+        }
+    }
+
+    @Benchmark
+    public void calculateResolvedTypeCached(FreshTree tree, Blackhole bh) {
+        // the cache outlives the trees, like it outlives files in a real run
+        for (ForEachStmt loop : tree.loops) {
+            bh.consume(types.calculateResolvedType(loop.getIterable()));
+        }
+    }
+
+    @Benchmark
+    public void isLocalArrayList(Blackhole bh) {
+        // a new run over the file starts without def-use indexes, but types resolved earlier stay cached
+        IdentityHashMap<BlockStmt, DefUseIndex> indexes = new IdentityHashMap<>();
+        for (ForEachStmt loop : loops) {
+            bh.consume(ArrayListAnalyzer.isLocalArrayList(loop, block(loop), indexes, types));
+        }
+    }
+
+    @Benchmark
+    public void callsModificationMethods(Blackhole bh) {
+        for (ForEachStmt loop : loops) {
+            bh.consume(ArrayListAnalyzer.callsModificationMethods(loop));
+        }
+    }
+
+    @Benchmark
+    public CompilationUnit doReplace(EligibleLoops tree) {
+        for (ForEachStmt loop : tree.eligible) {
+            ArrayListAnalyzer.doReplace(block(loop), loop);
+        }
+        return tree.cu;
+    }
+
+    @Benchmark
+    public String print() {
+        return new PrettyPrinter().print(cu);
+    }
+
+    @Benchmark
+    public int transform(FreshTree tree) {
+        return ArrayListAnalyzer.transform(tree.cu, types);
+    }
+
+    private static List<ForEachStmt> candidateLoops(CompilationUnit cu) {
+        List<ForEachStmt> loops = new ArrayList<>();
+        for (ForEachStmt loop : cu.findAll(ForEachStmt.class)) {
+            if (!(loop.getParentNode().orElse(null) instanceof BlockStmt) || !loop.getIterable().isNameExpr()) {
+                continue;
+            }
+            try {
+                loop.getIterable().calculateResolvedType();
+            } catch (RuntimeException e) {
+                // the analyzer would give up on this file; nothing to measure
+                continue;
+            }
+            loops.add(loop);
+        }
+        return loops;
+    }
+
+    private static BlockStmt block(ForEachStmt loop) {
+        return (BlockStmt) loop.getParentNode().get();
+    }
+}
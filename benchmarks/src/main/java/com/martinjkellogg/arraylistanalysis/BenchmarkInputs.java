@@ -0,0 +1,107 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The sources the benchmarks run on: the samples bundled with the analyzer, and generated ones that can be
+ * scaled up.
+ *
+ * <ul>
+ *     <li>"SimpleYesTransform.java", "Blabla.java": the bundled samples</li>
+ *     <li>"methods-N": a class with N methods that mix loops we rewrite with ones we reject</li>
+ *     <li>"nested-N": one method with a candidate loop in each of N nested blocks</li>
+ * </ul>
+ */
+final class BenchmarkInputs {
+
+    private BenchmarkInputs() {
+    }
+
+    static String load(String name) throws IOException {
+        if (name.startsWith("methods-")) {
+            return methods(Integer.parseInt(name.substring("methods-".length())));
+        }
+        if (name.startsWith("nested-")) {
+            return nested(Integer.parseInt(name.substring("nested-".length())));
+        }
+
+        // src/main/resources of the analyzer ends up at the root of its jar
+        try (InputStream in = ArrayListAnalyzer.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("no such input: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A class with the given number of methods, cycling through the shapes in SimpleYesTransform.java.
+     */
+    static String methods(int count) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("import java.util.*;\n\nclass SyntheticMethods {\n");
+
+        for (int i = 0; i < count; i++) {
+            sb.append("    public void method").append(i).append("() {\n");
+            switch (i % 4) {
+                case 0:
+                    // rewritten
+                    sb.append("        ArrayList<String> list = new ArrayList<>();\n");
+                    sb.append("        list.add(\"a\");\n");
+                    sb.append("        for (String s : list) {\n            System.out.print(s);\n        }\n");
+                    break;
+                case 1:
+                    // not an array list
+                    sb.append("        List<String> list = new LinkedList<>();\n");
+                    sb.append("        for (String s : list) {\n            System.out.print(s);\n        }\n");
+                    break;
+                case 2:
+                    // aliased
+                    sb.append("        ArrayList<String> list = new ArrayList<>();\n");
+                    sb.append("        List<String> alias = list;\n");
+                    sb.append("        for (String s : list) {\n            System.out.print(s);\n        }\n");
+                    break;
+                default:
+                    // modified in the loop
+                    sb.append("        ArrayList<String> list = new ArrayList<>();\n");
+                    sb.append("        for (String s : list) {\n            list.remove(s);\n        }\n");
+                    break;
+            }
+            sb.append("    }\n\n");
+        }
+
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * A method with the given number of nested blocks, each declaring a list and looping over it. Every
+     * level's analysis looks at everything nested inside it, which is what makes deep code expensive.
+     */
+    static String nested(int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("import java.util.*;\n\nclass SyntheticNested {\n");
+        sb.append("    public void method(int opcode) {\n");
+
+        for (int i = 0; i < depth; i++) {
+            sb.append("        ArrayList<String> list").append(i).append(" = new ArrayList<>();\n");
+            sb.append("        for (String s : list").append(i).append(") {\n");
+            sb.append("            System.out.print(s);\n        }\n");
+            sb.append("        if (opcode != ").append(i).append(") {\n");
+        }
+        for (int i = 0; i < depth; i++) {
+            sb.append("        }\n");
+        }
+
+        sb.append("    }\n}\n");
+        return sb.toString();
+    }
+}
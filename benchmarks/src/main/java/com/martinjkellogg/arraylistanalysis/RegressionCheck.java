@@ -0,0 +1,102 @@
+package com.martinjkellogg.arraylistanalysis;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with "-rf csv" and fails if any benchmark got slower than allowed.
+ *
+ * Usage: RegressionCheck BASELINE.csv CURRENT.csv [MAX_SLOWDOWN_PERCENT]
+ *
+ * Scores are throughput, so higher is better. The default allowed slowdown is 10%.
+ */
+public final class RegressionCheck {
+
+    private RegressionCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RegressionCheck BASELINE.csv CURRENT.csv [MAX_SLOWDOWN_PERCENT]");
+            System.exit(2);
+        }
+        double maxSlowdown = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, Double> baseline = read(args[0]);
+        Map<String, Double> current = read(args[1]);
+
+        boolean failed = false;
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format("%-80s %12.1f  (new)", entry.getKey(), entry.getValue()));
+                continue;
+            }
+
+            double change = (entry.getValue() - before) / before * 100;
+            boolean regressed = change < -maxSlowdown;
+            failed |= regressed;
+            System.out.println(String.format("%-80s %12.1f %+7.1f%%%s",
+                    entry.getKey(), entry.getValue(), change, regressed ? "  REGRESSION" : ""));
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Reads the score of every benchmark, keyed by its name and parameters.
+     */
+    private static Map<String, Double> read(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        Map<String, Double> scores = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return scores;
+        }
+
+        // "Benchmark","Mode","Threads","Samples","Score","Score Error (99.9%)","Unit","Param: input"
+        List<String> header = splitCsv(lines.get(0));
+        int score = header.indexOf("Score");
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> fields = splitCsv(line);
+            StringBuilder key = new StringBuilder(fields.get(0));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ")) {
+                    key.append(' ').append(header.get(i).substring("Param: ".length()))
+                            .append('=').append(fields.get(i));
+                }
+            }
+            scores.put(key.toString(), Double.parseDouble(fields.get(score)));
+        }
+        return scores;
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}